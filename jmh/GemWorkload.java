@@ -0,0 +1,128 @@
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * This class does the GemManager work of the JMH suite in jmh/gembench, which cannot
+ * refer to the game's default-package classes itself.  Boards and swaps are made by
+ * GemBench's settled and swap helpers.
+ */
+public class GemWorkload implements gembench.Workload{
+    // Instance Variables
+    private GemManager game;
+    private ForkJoinPool pool; // Runs the board's large steps in stripes
+    private int found; // Gems flagged by the last check, still to be removed
+    private boolean shiftDue; // Gems were removed and the columns are not yet shifted
+    private int op; // Swap counter that picks the next swap
+
+    /**
+     * Builds a settled square board that resolves large steps on a new pool.
+     * @param size num rows and cols for board
+     * @param symb num symbols to be used on board
+     * @param workers parallelism of the board's pool
+     */
+    public void setUp(int size, int symb, int workers){
+        pool = new ForkJoinPool(workers);
+        game = GemBench.settled(size, symb);
+        game.setPool(pool);
+        found = 0;
+        shiftDue = false;
+        op = 0;
+    }
+
+    /**
+     * Shuts down the board's pool.
+     */
+    public void tearDown(){
+        pool.shutdown();
+    }
+
+    /**
+     * Deals a new board.
+     * @return type at (0, 0)
+     */
+    public int initBoard(){
+        game.initBoard();
+        return game.getType(0, 0);
+    }
+
+    /**
+     * Swaps one fixed pair, without checking.
+     * @return type at (0, 0)
+     */
+    public int swapGems(){
+        game.swapGems(0, 0, 1, 0);
+        return game.getType(0, 0);
+    }
+
+    /**
+     * Swaps the next pseudo-randomly chosen pair and cascades until the board is stable.
+     * @return score of the cascade
+     */
+    public int cascade(){
+        GemBench.swap(game, op++);
+        return game.cascade();
+    }
+
+    /**
+     * Removes and shifts the Gems of the last check if it flagged any, otherwise swaps.
+     */
+    public void prepareCheck(){
+        if(found > 0){
+            game.changeType();
+            game.shiftGems();
+        } else {
+            GemBench.swap(game, op++);
+        }
+    }
+
+    /**
+     * Runs checkBoard and remembers whether it flagged Gems.
+     * @return number of Gems flagged
+     */
+    public int checkBoard(){
+        found = game.checkBoard();
+        return found;
+    }
+
+    /**
+     * Shifts the columns of the last removal, then checks, swapping until a check
+     * flags Gems.
+     */
+    public void prepareChangeType(){
+        if(shiftDue){
+            game.shiftGems();
+            shiftDue = false;
+        }
+        while(game.checkBoard() == 0){
+            GemBench.swap(game, op++);
+        }
+    }
+
+    /**
+     * Runs changeType.
+     * @return type at (0, 0)
+     */
+    public int changeType(){
+        game.changeType();
+        shiftDue = true;
+        return game.getType(0, 0);
+    }
+
+    /**
+     * Checks, swapping until a check flags Gems, and removes them.
+     */
+    public void prepareShiftGems(){
+        while(game.checkBoard() == 0){
+            GemBench.swap(game, op++);
+        }
+        game.changeType();
+    }
+
+    /**
+     * Runs shiftGems.
+     * @return type at (0, 0)
+     */
+    public int shiftGems(){
+        game.shiftGems();
+        return game.getType(0, 0);
+    }
+}
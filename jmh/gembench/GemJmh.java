@@ -0,0 +1,35 @@
+package gembench;
+
+import java.io.IOException;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * This class is the main class of target/benchmarks.jar.  It takes JMH's usual command
+ * line and always adds the gc profiler, so allocation regressions in the engine show up
+ * as gc.alloc.rate.norm next to every time.
+ *
+ * Usage: java -jar target/benchmarks.jar [JMH options] [benchmark regexps]
+ */
+public class GemJmh{
+    public static void main(String[] args) throws CommandLineOptionException, IOException, RunnerException{
+        CommandLineOptions command = new CommandLineOptions(args);
+        Options options;
+
+        if(command.shouldHelp()){
+            command.showHelp();
+            return;
+        }
+        if(command.shouldList()){
+            new Runner(command).list();
+            return;
+        }
+        options = new OptionsBuilder().parent(command).addProfiler(GCProfiler.class).build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,171 @@
+package gembench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * This class is the JMH suite for the GemManager hot paths, over the board sizes of
+ * SelectPanel and three large ones, and 3 to 8 symbols.  GemJmh runs it with the gc
+ * profiler, so every row also has its allocation rate, gc.alloc.rate.norm in bytes per
+ * operation.  GemBench times the rest of the engine without JMH.
+ *
+ * Benchmarks:
+ *   initBoard   initBoard on a settled board
+ *   swapGems    swapGems of one pair, without checking
+ *   cascade     a pseudo-random adjacent swap followed by cascade() until the board is stable
+ *   checkBoard  each checkBoard of a swap-and-cascade loop
+ *   changeType  each changeType of a swap-and-cascade loop
+ *   shiftGems   each shiftGems of a swap-and-cascade loop
+ * The last three bring the board to the stage timed in an untimed setup before every
+ * call, so JMH reads the clock around each call, which adds a few tens of nanoseconds
+ * and matters only on the smallest boards.
+ *
+ * Every board resolves its large steps on a ForkJoinPool of its own with the workers
+ * parameter's parallelism, so one run gives the scaling curve of the stripe-parallel
+ * check and shift from 1 worker up.  Only boards of at least 128 columns with steps of
+ * 4096 Gems or more run in stripes, so smaller boards time the same with any number of
+ * workers.  For the curve up to N cores: -p size=1024 -p workers=1,2,...,N.
+ *
+ * With 3 symbols a single swap on a board of 256x256 or more can cascade for a second
+ * or longer, so full sweeps take hours; pick boards with -p size=... -p symbols=....
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GemManagerBench{
+    /**
+     * A settled board of the configuration measured.
+     */
+    @State(Scope.Thread)
+    public static class Board{
+        @Param({"8", "9", "10", "11", "12", "64", "256", "1024"})
+        public int size;
+        @Param({"3", "4", "5", "6", "7", "8"})
+        public int symbols;
+        @Param({"1", "2", "4", "8"})
+        public int workers;
+
+        Workload work;
+
+        /**
+         * Builds the board and its pool once per trial.
+         */
+        @Setup(Level.Trial)
+        public void setUp(){
+            work = Workload.create();
+            work.setUp(size, symbols, workers);
+        }
+
+        /**
+         * Shuts down the board's pool.
+         */
+        @TearDown(Level.Trial)
+        public void tearDown(){
+            work.tearDown();
+        }
+    }
+
+    /**
+     * A board brought to its next checkBoard before each call.
+     */
+    @State(Scope.Thread)
+    public static class CheckStage extends Board{
+        /**
+         * Continues the cascade in progress or swaps.
+         */
+        @Setup(Level.Invocation)
+        public void prepare(){
+            work.prepareCheck();
+        }
+    }
+
+    /**
+     * A board brought to its next changeType before each call.
+     */
+    @State(Scope.Thread)
+    public static class ChangeStage extends Board{
+        /**
+         * Swaps and checks until Gems are flagged.
+         */
+        @Setup(Level.Invocation)
+        public void prepare(){
+            work.prepareChangeType();
+        }
+    }
+
+    /**
+     * A board brought to its next shiftGems before each call.
+     */
+    @State(Scope.Thread)
+    public static class ShiftStage extends Board{
+        /**
+         * Swaps and checks until Gems are flagged, then removes them.
+         */
+        @Setup(Level.Invocation)
+        public void prepare(){
+            work.prepareShiftGems();
+        }
+    }
+
+    /**
+     * Deals a new board.
+     * @param board board to deal on
+     * @return type at (0, 0)
+     */
+    @Benchmark
+    public int initBoard(Board board){
+        return board.work.initBoard();
+    }
+
+    /**
+     * Swaps one pair.
+     * @param board board to swap on
+     * @return type at (0, 0)
+     */
+    @Benchmark
+    public int swapGems(Board board){
+        return board.work.swapGems();
+    }
+
+    /**
+     * Swaps and cascades until the board is stable.
+     * @param board board to play on
+     * @return score of the cascade
+     */
+    @Benchmark
+    public int cascade(Board board){
+        return board.work.cascade();
+    }
+
+    /**
+     * Checks the board at the next check of a cascade.
+     * @param stage board prepared for the check
+     * @return number of Gems flagged
+     */
+    @Benchmark
+    public int checkBoard(CheckStage stage){
+        return stage.work.checkBoard();
+    }
+
+    /**
+     * Removes the flagged Gems.
+     * @param stage board prepared for the removal
+     * @return type at (0, 0)
+     */
+    @Benchmark
+    public int changeType(ChangeStage stage){
+        return stage.work.changeType();
+    }
+
+    /**
+     * Shifts the columns emptied by the last removal.
+     * @param stage board prepared for the shift
+     * @return type at (0, 0)
+     */
+    @Benchmark
+    public int shiftGems(ShiftStage stage){
+        return stage.work.shiftGems();
+    }
+}
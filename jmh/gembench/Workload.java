@@ -0,0 +1,90 @@
+package gembench;
+
+/**
+ * This interface is the GemManager work the JMH benchmarks time.  JMH only accepts
+ * benchmarks in a named package, and a named package cannot refer to the game's
+ * classes in the default package, so the work is done by GemWorkload, which is loaded
+ * by name.  Each pair of prepare and timed methods leaves the board where the timed
+ * stage comes next in a swap-and-cascade loop.  Swaps are picked by a counter kept
+ * with the board.
+ */
+public interface Workload{
+    /**
+     * Loads the default-package implementation.
+     * @return new GemWorkload
+     */
+    static Workload create(){
+        try{
+            return (Workload) Class.forName("GemWorkload").getDeclaredConstructor().newInstance();
+        } catch(ReflectiveOperationException ex){
+            throw new IllegalStateException("GemWorkload is not on the class path", ex);
+        }
+    }
+
+    /**
+     * Builds a settled square board, the starting point of every benchmark, that
+     * resolves large steps on a new pool.
+     * @param size num rows and cols for board
+     * @param symb num symbols to be used on board
+     * @param workers parallelism of the board's pool
+     */
+    void setUp(int size, int symb, int workers);
+
+    /**
+     * Shuts down the pool made by setUp.
+     */
+    void tearDown();
+
+    /**
+     * Deals a new board with initBoard.
+     * @return type at (0, 0)
+     */
+    int initBoard();
+
+    /**
+     * Swaps one fixed pair with swapGems, without checking.
+     * @return type at (0, 0)
+     */
+    int swapGems();
+
+    /**
+     * Swaps the next pseudo-randomly chosen pair and cascades until the board is stable.
+     * @return score of the cascade
+     */
+    int cascade();
+
+    /**
+     * Brings the board to its next checkBoard: the next step of a cascade in progress,
+     * or a new swap.
+     */
+    void prepareCheck();
+
+    /**
+     * Runs checkBoard.
+     * @return number of Gems flagged
+     */
+    int checkBoard();
+
+    /**
+     * Brings the board to its next changeType, swapping until a check flags Gems.
+     */
+    void prepareChangeType();
+
+    /**
+     * Runs changeType.
+     * @return type at (0, 0)
+     */
+    int changeType();
+
+    /**
+     * Brings the board to its next shiftGems, swapping until a check flags Gems and
+     * removing them.
+     */
+    void prepareShiftGems();
+
+    /**
+     * Runs shiftGems.
+     * @return type at (0, 0)
+     */
+    int shiftGems();
+}
@@ -0,0 +1,157 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * This class asserts that the GemManager match scan and a full swap-to-settle cascade
+ * allocate nothing once the JIT has warmed up.  It reads the per-thread allocated
+ * byte counter from the JVM's ThreadMXBean before and after a measured loop and
+ * exits with status 1 if any bytes were allocated.
+ *
+ * These checks resolve every step on the calling thread.  A last check cascades on a
+ * pool of POOL_WORKERS workers, so large steps run in parallel stripes on any machine.
+ * The stripes' tasks and buffers are made once and reused, but a caller that blocks in
+ * ForkJoinPool.invoke while workers finish gets a small wait node from the JDK, so the
+ * parallel path is only held to POOL_WAIT_BYTES per cascade on average.
+ * Usage: java AllocationCheck
+ */
+public class AllocationCheck{
+    private static final int WARMUP = 20000;
+    private static final int MEASURED = 5000;
+    private static final int POOL_WORKERS = 4;
+    private static final int POOL_WAIT_BYTES = 24; // One ForkJoinTask wait node per cascade
+
+    private static com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args){
+        boolean passed = true;
+
+        passed &= check("match scan 12x12", settled(12, 12, 6), false);
+        passed &= check("match scan 256x256", settled(256, 256, 6), false);
+        passed &= check("cascade 12x12", settled(12, 12, 6), true);
+        passed &= check("cascade 200x200", settled(200, 200, 4), true);
+        passed &= checkPooled("cascade 200x200 pooled", settled(200, 200, 4));
+
+        if(!passed){
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Builds a board and cascades it until nothing matches, as GemEngine does for a new game.
+     * @param rows num rows for board
+     * @param cols num cols for board
+     * @param symb num symbols to be used on board
+     * @return settled GemManager resolving every step on the calling thread
+     */
+    private static GemManager settled(int rows, int cols, int symb){
+        GemManager game = new GemManager(rows, cols, symb, 16);
+
+        game.setPool(null);
+        while(game.checkBoard() > 0){
+            game.changeType();
+            game.shiftGems();
+        }
+        return game;
+    }
+
+    /**
+     * Runs the match scan or a cascade repeatedly, first to warm up and then measured.
+     * @param name label for the report
+     * @param game settled board to play on
+     * @param cascade true to swap and settle, false to only scan
+     * @return true if the measured loop allocated zero bytes
+     */
+    private static boolean check(String name, GemManager game, boolean cascade){
+        long id = Thread.currentThread().getId();
+        long before, after;
+
+        for(int i = 0; i < WARMUP; i++){
+            run(game, i, cascade);
+        }
+        before = threads.getThreadAllocatedBytes(id);
+        for(int i = 0; i < MEASURED; i++){
+            run(game, i, cascade);
+        }
+        after = threads.getThreadAllocatedBytes(id);
+
+        System.out.println(name + ": " + (after - before) + " bytes allocated");
+        return after == before;
+    }
+
+    /**
+     * Runs cascades with large steps checked and shifted in parallel stripes, first to
+     * warm up and then measured.
+     * @param name label for the report
+     * @param game settled board to play on
+     * @return true if the measured loop allocated at most POOL_WAIT_BYTES per cascade
+     */
+    private static boolean checkPooled(String name, GemManager game){
+        ForkJoinPool pool = new ForkJoinPool(POOL_WORKERS);
+        long id = Thread.currentThread().getId();
+        long before, after;
+
+        game.setPool(pool);
+        try{
+            for(int i = 0; i < WARMUP; i++){
+                swapAndSettle(game, i);
+            }
+            before = threads.getThreadAllocatedBytes(id);
+            for(int i = 0; i < MEASURED; i++){
+                swapAndSettle(game, i);
+            }
+            after = threads.getThreadAllocatedBytes(id);
+        } finally{
+            pool.shutdown();
+        }
+
+        System.out.println(name + ": " + (after - before) + " bytes allocated");
+        return after - before <= (long) POOL_WAIT_BYTES * MEASURED;
+    }
+
+    /**
+     * Runs one iteration of the chosen workload.
+     * @param game board to play on
+     * @param iteration loop counter
+     * @param cascade true to swap and settle, false to only scan
+     */
+    private static void run(GemManager game, int iteration, boolean cascade){
+        if(cascade){
+            swapAndSettle(game, iteration);
+        } else {
+            scan(game, iteration);
+        }
+    }
+
+    /**
+     * Swaps a pseudo-randomly chosen Gem with its right-hand neighbour and cascades
+     * until nothing matches.
+     * @param game board to play on
+     * @param iteration loop counter used to pick the swap
+     */
+    private static void swapAndSettle(GemManager game, int iteration){
+        int hash = iteration * 0x9E3779B9;
+        int x = (hash >>> 8) % (game.getNumCols() - 1);
+        int y = (hash >>> 20) % game.getNumRows();
+
+        game.swapGems(x, y, x + 1, y);
+        while(game.checkBoard() > 0){
+            game.changeType();
+            game.shiftGems();
+        }
+    }
+
+    /**
+     * Scans one row-sized slice of the board so every iteration stays cheap on large boards.
+     * @param game board to scan
+     * @param iteration loop counter used to pick the row
+     */
+    private static void scan(GemManager game, int iteration){
+        int y = iteration % game.getNumRows();
+
+        for(int x = 0; x < game.getNumCols(); x++){
+            game.horizontalCheck(x, y);
+            game.verticalCheck(x, y);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/**
+ * This interface describes the storage for the types held on a Gem board.  Cells
+ * are addressed either by (x,y) coordinates or by a single row-major cell index
+ * (y * numCols + x).  Type 0 is reserved for an empty cell.
+ */
+public interface Board{
+
+    /**
+     * Get method for numRows.
+     * @return number of rows in board
+     */
+    int getNumRows();
+
+    /**
+     * Get method for numCols.
+     * @return number of columns in board
+     */
+    int getNumCols();
+
+    /**
+     * Get method for the type at a coordinate.
+     * @param x x-coordinate of cell
+     * @param y y-coordinate of cell
+     * @return type stored at (x,y)
+     */
+    int getType(int x, int y);
+
+    /**
+     * Set method for the type at a coordinate.
+     * @param x x-coordinate of cell
+     * @param y y-coordinate of cell
+     * @param type integer from 0 to however many symbols are being used in game
+     */
+    void setType(int x, int y, int type);
+
+    /**
+     * Get method for the type at a cell index.
+     * @param i row-major cell index
+     * @return type stored at cell i
+     */
+    int get(int i);
+
+    /**
+     * Set method for the type at a cell index.
+     * @param i row-major cell index
+     * @param type integer from 0 to however many symbols are being used in game
+     */
+    void set(int i, int type);
+}
@@ -0,0 +1,147 @@
+/**
+ * This class is an immutable picture of the game that GemEngine publishes after every
+ * command, for the GUI to draw.  Frames are numbered; a GUI that sees a gap in the
+ * numbers has missed the events of a frame and should show the board as it is rather
+ * than animate.
+ *
+ * The board is held as square tiles of TILE x TILE cells, and a tile is never changed
+ * once published.  GemEngine copies only the tiles a move changed into new arrays and
+ * shares every other tile with the frame before, so publishing a move on a large board
+ * costs the cells it touched plus one reference per tile, not a copy of the board.
+ */
+public final class BoardFrame{
+    // Instance Variables
+    public static final int TILE_BITS = 6;
+    public static final int TILE = 1 << TILE_BITS;
+    private static final int TILE_MASK = TILE - 1;
+
+    private final long seq;
+    private final int command; // GemEngine command that made the frame
+    private final int numRows, numCols, tileCols, score, hint;
+    private final byte[][] tiles; // Row-major tiles of row-major types, never changed
+    private final CascadeEvents events; // Events of the move played, or null
+    private final boolean reshuffled;
+
+    /**
+     * Constructor for a frame.  The arrays passed in are kept, not copied, and must not
+     * be changed afterwards.
+     * @param seq frame number
+     * @param command GemEngine command that made the frame
+     * @param numRows num rows of board
+     * @param numCols num cols of board
+     * @param tiles row-major tiles of the settled board, see tileIndex
+     * @param score total score of the game
+     * @param hint move to highlight, or Move.NONE
+     * @param events events of the move played, or null if no move was played
+     * @param reshuffled true if the board was reshuffled after the move's events
+     */
+    public BoardFrame(long seq, int command, int numRows, int numCols, byte[][] tiles, int score, int hint,
+                      CascadeEvents events, boolean reshuffled){
+        this.seq = seq;
+        this.command = command;
+        this.numRows = numRows;
+        this.numCols = numCols;
+        this.tileCols = tileColumns(numCols);
+        this.tiles = tiles;
+        this.score = score;
+        this.hint = hint;
+        this.events = events;
+        this.reshuffled = reshuffled;
+    }
+
+    /**
+     * Number of tile columns covering a board.
+     * @param numCols num cols of board
+     * @return tiles per row of tiles
+     */
+    public static int tileColumns(int numCols){
+        return (numCols + TILE_MASK) >>> TILE_BITS;
+    }
+
+    /**
+     * Index of the tile holding a cell.
+     * @param x x coordinate of cell
+     * @param y y coordinate of cell
+     * @param numCols num cols of board
+     * @return row-major tile index
+     */
+    public static int tileIndex(int x, int y, int numCols){
+        return (y >>> TILE_BITS) * tileColumns(numCols) + (x >>> TILE_BITS);
+    }
+
+    /**
+     * Get method for the frame number.
+     * @return number, one more than the frame published before
+     */
+    public long getSeq(){
+        return seq;
+    }
+
+    /**
+     * Get method for the command that made the frame.
+     * @return GemEngine.START, SWAP, HINT or AUTO
+     */
+    public int getCommand(){
+        return command;
+    }
+
+    /**
+     * Get method for the number of rows.
+     * @return num rows of board
+     */
+    public int getNumRows(){
+        return numRows;
+    }
+
+    /**
+     * Get method for the number of columns.
+     * @return num cols of board
+     */
+    public int getNumCols(){
+        return numCols;
+    }
+
+    /**
+     * Get method for a cell's type.
+     * @param x x coordinate of cell
+     * @param y y coordinate of cell
+     * @return type
+     */
+    public int getType(int x, int y){
+        return tiles[(y >>> TILE_BITS) * tileCols + (x >>> TILE_BITS)][(y & TILE_MASK) << TILE_BITS | (x & TILE_MASK)];
+    }
+
+    /**
+     * Get method for the score.
+     * @return total score of the game
+     */
+    public int getScore(){
+        return score;
+    }
+
+    /**
+     * Get method for the hint.
+     * @return move to highlight, or Move.NONE
+     */
+    public int getHint(){
+        return hint;
+    }
+
+    /**
+     * Get method for the events of the move played.  The buffer belongs to the frame and
+     * must only be read.
+     * @return events, or null if the command played no move
+     */
+    public CascadeEvents getEvents(){
+        return events;
+    }
+
+    /**
+     * Checks whether the board was reshuffled after the move, in which case it differs
+     * from the board the events end on.
+     * @return true if the move left no moves and the board was reshuffled
+     */
+    public boolean isReshuffled(){
+        return reshuffled;
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * This class stores a Gem board as a flat, row-major byte array with one byte per
+ * cell.  It replaces a grid of Gem objects, which costs an object header, three ints
+ * and a reference per cell plus one array per column.
+ *
+ * Approximate heap use (64-bit JVM, compressed oops):
+ *   12x12:      Gem[][] ~4.2 KB,  ByteBoard ~0.2 KB
+ *   1024x1024:  Gem[][] ~29.4 MB, ByteBoard ~1.0 MB
+ */
+public class ByteBoard implements Board{
+    // Instance Variables
+    private int numRows, numCols;
+    private byte[] cells; // Row-major: cell (x,y) is at y * numCols + x
+
+    /**
+     * Constructor for an empty board of the given size.
+     * @param rows num rows for board
+     * @param cols num cols for board
+     */
+    public ByteBoard(int rows, int cols){
+        this.numRows = rows;
+        this.numCols = cols;
+        cells = new byte[rows * cols];
+    }
+
+    /**
+     * Changes the size of the board, reusing the backing array when it holds enough
+     * cells.  The types of the cells are left as they were and must be dealt again.
+     * @param rows num rows for board
+     * @param cols num cols for board
+     */
+    public void resize(int rows, int cols){
+        this.numRows = rows;
+        this.numCols = cols;
+        if(cells.length < rows * cols){
+            cells = new byte[rows * cols];
+        }
+    }
+
+    /**
+     * Get method for numRows.
+     * @return number of rows in board
+     */
+    public int getNumRows(){
+        return numRows;
+    }
+
+    /**
+     * Get method for numCols.
+     * @return number of columns in board
+     */
+    public int getNumCols(){
+        return numCols;
+    }
+
+    /**
+     * Get method for the type at a coordinate.
+     * @param x x-coordinate of cell
+     * @param y y-coordinate of cell
+     * @return type stored at (x,y)
+     */
+    public int getType(int x, int y){
+        return cells[y * numCols + x];
+    }
+
+    /**
+     * Set method for the type at a coordinate.
+     * @param x x-coordinate of cell
+     * @param y y-coordinate of cell
+     * @param type integer from 0 to however many symbols are being used in game
+     */
+    public void setType(int x, int y, int type){
+        cells[y * numCols + x] = (byte) type;
+    }
+
+    /**
+     * Get method for the type at a cell index.
+     * @param i row-major cell index
+     * @return type stored at cell i
+     */
+    public int get(int i){
+        return cells[i];
+    }
+
+    /**
+     * Set method for the type at a cell index.
+     * @param i row-major cell index
+     * @param type integer from 0 to however many symbols are being used in game
+     */
+    public void set(int i, int type){
+        cells[i] = (byte) type;
+    }
+
+    /**
+     * Gives direct access to the backing array for index arithmetic in the engine.
+     * @return row-major array of cell types
+     */
+    byte[] cells(){
+        return cells;
+    }
+}
@@ -0,0 +1,282 @@
+import java.awt.Rectangle;
+
+/**
+ * This class plays back the CascadeEvents of a move that GemEngine has already
+ * resolved.  It keeps the board as it should look on screen, which trails the real
+ * board until the animation ends, and splits the events into timed phases: the swap,
+ * then for every removal step the Gems vanishing and the Gems falling.  A renderer asks
+ * for the current phase and its progress at every frame and draws the phase's Gems in
+ * between their positions, while every other cell shows its settled type.
+ */
+public class CascadeAnimation{
+    // Instance Variables
+    public static final int SWAP_MS = 150, VANISH_MS = 200, FALL_MS = 250;
+
+    private CascadeEvents events;
+    private int numRows, numCols;
+    private byte[] shown; // Types on screen at the start of the current phase, row-major
+    private int[] first; // Index of the first event of each phase, and the event count last
+    private int phase, numPhases;
+    private long phaseStart; // System.nanoTime when the current phase began
+    private boolean running;
+    private CellSet moving; // Row-major cells drawn in flight during the current phase
+    private Rectangle area; // Cells touched by the current phase
+
+    /**
+     * Constructor for the animations of a board.
+     * @param numRows num rows of board
+     * @param numCols num cols of board
+     */
+    public CascadeAnimation(int numRows, int numCols){
+        this.numRows = numRows;
+        this.numCols = numCols;
+        shown = new byte[numRows * numCols];
+        moving = new CellSet(numRows * numCols);
+        first = new int[2];
+        area = new Rectangle();
+    }
+
+    /**
+     * Shows a frame's board as it is, ending any animation.
+     * @param frame frame of a board of this size
+     * @return true if any shown cell changed
+     */
+    public boolean sync(BoardFrame frame){
+        boolean differs = false;
+        int type;
+
+        for(int y = 0; y < numRows; y++){
+            for(int x = 0; x < numCols; x++){
+                type = frame.getType(x, y);
+                if(shown[y * numCols + x] != type){
+                    shown[y * numCols + x] = (byte) type;
+                    differs = true;
+                }
+            }
+        }
+        running = false;
+        moving.clear();
+        return differs;
+    }
+
+    /**
+     * Starts animating the events of a move.  The screen must show the board as it was
+     * before the move, as after sync or finish.
+     * @param events events of the move, only read
+     * @param now System.nanoTime of the first frame
+     */
+    public void start(CascadeEvents events, long now){
+        int p;
+
+        this.events = events;
+        numPhases = 1 + 2 * events.getSteps();
+        if(first.length < numPhases + 1){
+            first = new int[numPhases + 1];
+        }
+        p = 0;
+        for(int e = 0; e < events.size(); e++){
+            while(p < phaseOf(e)){
+                first[++p] = e;
+            }
+        }
+        while(p < numPhases){
+            first[++p] = events.size();
+        }
+        phase = 0;
+        phaseStart = now;
+        running = true;
+        beginPhase();
+    }
+
+    /**
+     * Phase an event belongs to.
+     * @param e event index
+     * @return 0 for the swap, 2k - 1 for step k's removals, 2k for its falls
+     */
+    private int phaseOf(int e){
+        int kind = events.kind(e);
+
+        if(kind == CascadeEvents.SWAP){
+            return 0;
+        }
+        return 2 * events.step(e) - (kind == CascadeEvents.VANISH ? 1 : 0);
+    }
+
+    /**
+     * Length of a phase.
+     * @param p phase number
+     * @return duration in nanoseconds
+     */
+    private static long duration(int p){
+        return 1000000L * (p == 0 ? SWAP_MS : p % 2 == 1 ? VANISH_MS : FALL_MS);
+    }
+
+    /**
+     * Moves the animation on to the phase running at a given time, settling the phases
+     * that have ended.
+     * @param now System.nanoTime of the frame
+     * @return false once the whole animation has ended
+     */
+    public boolean advance(long now){
+        while(running && now - phaseStart >= duration(phase)){
+            phaseStart += duration(phase);
+            endPhase();
+        }
+        return running;
+    }
+
+    /**
+     * Jumps to the end of the animation.
+     */
+    public void finish(){
+        while(running){
+            endPhase();
+        }
+    }
+
+    /**
+     * Applies the current phase's events to the shown board and starts the next phase.
+     */
+    private void endPhase(){
+        int kind, a, b;
+        byte temp;
+
+        for(int e = first[phase]; e < first[phase + 1]; e++){
+            kind = events.kind(e);
+            a = events.y1(e) * numCols + events.x1(e);
+            b = events.y2(e) * numCols + events.x2(e);
+            if(kind == CascadeEvents.SWAP){
+                temp = shown[a];
+                shown[a] = shown[b];
+                shown[b] = temp;
+            } else if(kind == CascadeEvents.VANISH){
+                shown[a] = 0;
+            } else {
+                shown[b] = (byte) events.type(e);
+            }
+        }
+        phase++;
+        if(phase == numPhases){
+            running = false;
+            moving.clear();
+        } else {
+            beginPhase();
+        }
+    }
+
+    /**
+     * Finds the cells that move during the current phase and the area it touches.
+     */
+    private void beginPhase(){
+        int kind, yMin = numRows, yMax = -1, xMin = numCols, xMax = -1;
+
+        moving.clear();
+        for(int e = first[phase]; e < first[phase + 1]; e++){
+            kind = events.kind(e);
+            if(kind != CascadeEvents.SPAWN){
+                moving.add(events.y1(e) * numCols + events.x1(e));
+            }
+            if(kind == CascadeEvents.SWAP){
+                moving.add(events.y2(e) * numCols + events.x2(e));
+            }
+            xMin = Math.min(xMin, Math.min(events.x1(e), events.x2(e)));
+            xMax = Math.max(xMax, Math.max(events.x1(e), events.x2(e)));
+            yMin = Math.min(yMin, Math.max(Math.min(events.y1(e), events.y2(e)), 0));
+            yMax = Math.max(yMax, Math.max(events.y1(e), events.y2(e)));
+        }
+        area.setBounds(xMin, yMin, Math.max(xMax - xMin + 1, 0), Math.max(yMax - yMin + 1, 0));
+    }
+
+    /**
+     * Checks whether an animation is playing.
+     * @return true until the last phase ends
+     */
+    public boolean isRunning(){
+        return running;
+    }
+
+    /**
+     * Get method for the shown type of a cell.
+     * @param x x coordinate of cell
+     * @param y y coordinate of cell
+     * @return type on screen at the start of the current phase
+     */
+    public int getType(int x, int y){
+        return shown[y * numCols + x];
+    }
+
+    /**
+     * Checks whether a cell's Gem is drawn in flight rather than in its cell.
+     * @param x x coordinate of cell
+     * @param y y coordinate of cell
+     * @return true if the cell should be drawn empty under the moving Gems
+     */
+    public boolean isMoving(int x, int y){
+        return running && moving.contains(y * numCols + x);
+    }
+
+    /**
+     * Get method for the cells touched by the current phase.
+     * @return area in cell units, empty when nothing is playing
+     */
+    public Rectangle getArea(){
+        return running ? area : new Rectangle();
+    }
+
+    /**
+     * Get method for the events being played.
+     * @return events passed to the last start
+     */
+    public CascadeEvents getEvents(){
+        return events;
+    }
+
+    /**
+     * Get method for the number of rows.
+     * @return num rows of board
+     */
+    public int getNumRows(){
+        return numRows;
+    }
+
+    /**
+     * Get method for the number of columns.
+     * @return num cols of board
+     */
+    public int getNumCols(){
+        return numCols;
+    }
+
+    /**
+     * Get method for the current phase.
+     * @return 0 for the swap, odd for removals, even for falls
+     */
+    public int getPhase(){
+        return phase;
+    }
+
+    /**
+     * Fraction of the current phase that has played.
+     * @param now System.nanoTime of the frame
+     * @return progress from 0 to 1
+     */
+    public double getProgress(long now){
+        return Math.min(Math.max((double) (now - phaseStart) / duration(phase), 0), 1);
+    }
+
+    /**
+     * Get method for the first event of the current phase.
+     * @return event index
+     */
+    public int getFirstEvent(){
+        return first[phase];
+    }
+
+    /**
+     * Get method for the end of the current phase's events.
+     * @return index after the phase's last event
+     */
+    public int getEndEvent(){
+        return first[phase + 1];
+    }
+}
@@ -0,0 +1,314 @@
+import java.util.Arrays;
+
+/**
+ * This class records what happens to each cell while a move resolves, so a renderer can
+ * animate a cascade that GemManager has already finished.  Events are kept in one
+ * growable int array, seven ints each, and are numbered by step: step 0 is the swap,
+ * and step k is the k-th removal together with the falls and new Gems that follow it.
+ * The buffer is meant to be reused: clear keeps its arrays, so once they have grown to
+ * the largest move seen, filling it allocates nothing.
+ *
+ * Kinds of event and their cells:
+ *   SWAP    Gems at (x1, y1) and (x2, y2) trade places
+ *   VANISH  Gem of type at (x1, y1) is removed
+ *   FALL    Gem of type falls in column x1 from row y1 to row y2
+ *   SPAWN   new Gem of type enters column x1 from row y1, above the board, to row y2
+ *
+ * The runs of 3 or more that each removal step scores, its chains, are kept apart from
+ * the cell events in a second array, so consumers that only animate cells never see
+ * them.  A chain has its step, its ends, its type, its length and its score: the run's
+ * points times the step's multiplier, which is the step number.  A run whose Gems were
+ * all flagged by a crossing run found before it is removed without scoring, and is
+ * kept with a score of 0.
+ */
+public class CascadeEvents{
+    // Instance Variables
+    public static final int SWAP = 0, VANISH = 1, FALL = 2, SPAWN = 3;
+    private static final int FIELDS = 7; // kind, step, x1, y1, x2, y2, type
+    private static final int CHAIN_FIELDS = 7; // step, x1, y1, x2, y2, type, score
+
+    private int[] data = new int[FIELDS * 64];
+    private int[] chains = new int[CHAIN_FIELDS * 16];
+    private int count, step, numChains;
+    private long score; // Sum of the chains' scores
+
+    /**
+     * Removes every event and restarts the step count.
+     */
+    public void clear(){
+        count = 0;
+        step = 0;
+        numChains = 0;
+        score = 0;
+    }
+
+    /**
+     * Get method for the number of events.
+     * @return number of events recorded since clear
+     */
+    public int size(){
+        return count;
+    }
+
+    /**
+     * Get method for the number of steps.
+     * @return number of removal steps recorded since clear
+     */
+    public int getSteps(){
+        return step;
+    }
+
+    /**
+     * Get method for the number of chains.
+     * @return number of runs removed since clear
+     */
+    public int getNumChains(){
+        return numChains;
+    }
+
+    /**
+     * Get method for the score of the chains.
+     * @return sum of the chains' scores, multipliers included
+     */
+    public long getScore(){
+        return score;
+    }
+
+    /**
+     * Starts the next removal step.
+     */
+    void nextStep(){
+        step++;
+    }
+
+    /**
+     * Records a swap.
+     * @param x1 x coordinate of first Gem
+     * @param y1 y coordinate of first Gem
+     * @param x2 x coordinate of second Gem
+     * @param y2 y coordinate of second Gem
+     */
+    void swap(int x1, int y1, int x2, int y2){
+        add(SWAP, x1, y1, x2, y2, 0);
+    }
+
+    /**
+     * Records a removal.
+     * @param x x coordinate of Gem
+     * @param y y coordinate of Gem
+     * @param type type removed
+     */
+    void vanish(int x, int y, int type){
+        add(VANISH, x, y, x, y, type);
+    }
+
+    /**
+     * Records a Gem falling.
+     * @param x column of Gem
+     * @param from row it falls from
+     * @param to row it lands on
+     * @param type type of Gem
+     */
+    void fall(int x, int from, int to, int type){
+        add(FALL, x, from, x, to, type);
+    }
+
+    /**
+     * Records a new Gem entering from above.
+     * @param x column of Gem
+     * @param from row above the board it starts from, negative
+     * @param to row it lands on
+     * @param type type of Gem
+     */
+    void spawn(int x, int from, int to, int type){
+        add(SPAWN, x, from, x, to, type);
+    }
+
+    /**
+     * Records a run found by a check, which the next removal step removes.
+     * @param x1 x coordinate of the left or top end
+     * @param y1 y coordinate of the left or top end
+     * @param x2 x coordinate of the right or bottom end
+     * @param y2 y coordinate of the right or bottom end
+     * @param type type of the run's Gems
+     * @param points points of the run before the multiplier, 0 if it does not score
+     */
+    void chain(int x1, int y1, int x2, int y2, int type, int points){
+        int i = numChains * CHAIN_FIELDS;
+
+        if(i + CHAIN_FIELDS > chains.length){
+            chains = Arrays.copyOf(chains, chains.length * 2);
+        }
+        chains[i] = step + 1;
+        chains[i + 1] = x1;
+        chains[i + 2] = y1;
+        chains[i + 3] = x2;
+        chains[i + 4] = y2;
+        chains[i + 5] = type;
+        chains[i + 6] = points * (step + 1);
+        score += chains[i + 6];
+        numChains++;
+    }
+
+    /**
+     * Appends one event, growing the array when full.
+     * @param kind SWAP, VANISH, FALL or SPAWN
+     * @param x1 first x coordinate
+     * @param y1 first y coordinate
+     * @param x2 second x coordinate
+     * @param y2 second y coordinate
+     * @param type Gem type, 0 for a swap
+     */
+    private void add(int kind, int x1, int y1, int x2, int y2, int type){
+        int i = count * FIELDS;
+
+        if(i + FIELDS > data.length){
+            data = Arrays.copyOf(data, data.length * 2);
+        }
+        data[i] = kind;
+        data[i + 1] = step;
+        data[i + 2] = x1;
+        data[i + 3] = y1;
+        data[i + 4] = x2;
+        data[i + 5] = y2;
+        data[i + 6] = type;
+        count++;
+    }
+
+    /**
+     * Get method for the kind of an event.
+     * @param e event index
+     * @return SWAP, VANISH, FALL or SPAWN
+     */
+    public int kind(int e){
+        return data[e * FIELDS];
+    }
+
+    /**
+     * Get method for the step of an event.
+     * @param e event index
+     * @return 0 for the swap, k for the k-th removal step
+     */
+    public int step(int e){
+        return data[e * FIELDS + 1];
+    }
+
+    /**
+     * Get method for the first x coordinate of an event.
+     * @param e event index
+     * @return x1
+     */
+    public int x1(int e){
+        return data[e * FIELDS + 2];
+    }
+
+    /**
+     * Get method for the first y coordinate of an event.
+     * @param e event index
+     * @return y1
+     */
+    public int y1(int e){
+        return data[e * FIELDS + 3];
+    }
+
+    /**
+     * Get method for the second x coordinate of an event.
+     * @param e event index
+     * @return x2
+     */
+    public int x2(int e){
+        return data[e * FIELDS + 4];
+    }
+
+    /**
+     * Get method for the second y coordinate of an event.
+     * @param e event index
+     * @return y2
+     */
+    public int y2(int e){
+        return data[e * FIELDS + 5];
+    }
+
+    /**
+     * Get method for the Gem type of an event.
+     * @param e event index
+     * @return type, 0 for a swap
+     */
+    public int type(int e){
+        return data[e * FIELDS + 6];
+    }
+
+    /**
+     * Get method for the step of a chain, which is also its multiplier.
+     * @param c chain index
+     * @return removal step that removes the chain, from 1
+     */
+    public int chainStep(int c){
+        return chains[c * CHAIN_FIELDS];
+    }
+
+    /**
+     * Get method for the left or top end's x coordinate of a chain.
+     * @param c chain index
+     * @return x1
+     */
+    public int chainX1(int c){
+        return chains[c * CHAIN_FIELDS + 1];
+    }
+
+    /**
+     * Get method for the left or top end's y coordinate of a chain.
+     * @param c chain index
+     * @return y1
+     */
+    public int chainY1(int c){
+        return chains[c * CHAIN_FIELDS + 2];
+    }
+
+    /**
+     * Get method for the right or bottom end's x coordinate of a chain.
+     * @param c chain index
+     * @return x2
+     */
+    public int chainX2(int c){
+        return chains[c * CHAIN_FIELDS + 3];
+    }
+
+    /**
+     * Get method for the right or bottom end's y coordinate of a chain.
+     * @param c chain index
+     * @return y2
+     */
+    public int chainY2(int c){
+        return chains[c * CHAIN_FIELDS + 4];
+    }
+
+    /**
+     * Get method for the Gem type of a chain.
+     * @param c chain index
+     * @return type of the run's Gems
+     */
+    public int chainType(int c){
+        return chains[c * CHAIN_FIELDS + 5];
+    }
+
+    /**
+     * Get method for the length of a chain.
+     * @param c chain index
+     * @return number of Gems in the run
+     */
+    public int chainLength(int c){
+        int i = c * CHAIN_FIELDS;
+
+        return chains[i + 3] - chains[i + 1] + chains[i + 4] - chains[i + 2] + 1;
+    }
+
+    /**
+     * Get method for the score of a chain.
+     * @param c chain index
+     * @return points of the run times its step's multiplier, 0 if it does not score
+     */
+    public int chainScore(int c){
+        return chains[c * CHAIN_FIELDS + 6];
+    }
+}
@@ -0,0 +1,265 @@
+import java.util.Arrays;
+
+/**
+ * This class is a set of board cells backed by a long[] bitset, one bit per cell
+ * index.  Adding and testing a cell are O(1), duplicates are ignored, and cells
+ * are visited in increasing index order with nextSetBit.
+ *
+ * A second, summary bitset has one bit per word that may be non-empty, so clear and a
+ * walk with nextSetBit skip 4096 empty cells per summary word read.  On a large board a
+ * set holding a few cells costs about its cell count rather than the board area.
+ */
+public class CellSet{
+    // Instance Variables
+    private long[] words;
+    private long[] summary; // Bit w is set when words[w] may be non-zero
+    private int numCells, size;
+
+    /**
+     * Constructor for an empty set able to hold every cell of a board.
+     * @param numCells number of cells on the board
+     */
+    public CellSet(int numCells){
+        this.numCells = numCells;
+        words = new long[(numCells + 63) >>> 6];
+        summary = new long[(words.length + 63) >>> 6];
+        size = 0;
+    }
+
+    /**
+     * Empties the set and sets the number of cells it covers, reusing its words when they
+     * can hold that many, so a board restarted at the same or a smaller size allocates
+     * nothing.
+     * @param numCells number of cells on the board
+     */
+    public void resize(int numCells){
+        clear();
+        this.numCells = numCells;
+        if(words.length < (numCells + 63) >>> 6){
+            words = new long[(numCells + 63) >>> 6];
+            summary = new long[(words.length + 63) >>> 6];
+        }
+    }
+
+    /**
+     * Adds a cell to the set.
+     * @param i cell index
+     * @return true if the cell was not already in the set
+     */
+    public boolean add(int i){
+        long bit = 1L << i;
+        int w = i >>> 6;
+
+        if((words[w] & bit) != 0){
+            return false;
+        }
+        words[w] |= bit;
+        summary[w >>> 6] |= 1L << w;
+        size++;
+        return true;
+    }
+
+    /**
+     * Adds a cell without updating the size or the summary, for writers that own whole
+     * words of the set but may share a summary word.  Both are corrected by calling
+     * recount once every writer has finished.
+     * @param i cell index
+     * @return true if the cell was not already in the set
+     */
+    boolean addUncounted(int i){
+        long bit = 1L << i;
+        int w = i >>> 6;
+
+        if((words[w] & bit) != 0){
+            return false;
+        }
+        words[w] |= bit;
+        return true;
+    }
+
+    /**
+     * Recomputes the size and the summary after cells were added through addUncounted.
+     */
+    void recount(){
+        size = 0;
+        Arrays.fill(summary, 0L);
+        for(int w = 0; w < words.length; w++){
+            if(words[w] != 0){
+                size += Long.bitCount(words[w]);
+                summary[w >>> 6] |= 1L << w;
+            }
+        }
+    }
+
+    /**
+     * Adds every cell in an index range, a word at a time.
+     * @param from first cell index to add
+     * @param to last cell index to add, inclusive
+     */
+    public void addRange(int from, int to){
+        int w1 = from >>> 6, w2 = to >>> 6;
+        long mask, added;
+
+        for(int w = w1; w <= w2; w++){
+            mask = -1L;
+            if(w == w1){
+                mask &= -1L << from;
+            }
+            if(w == w2){
+                mask &= -1L >>> (63 - (to & 63));
+            }
+            added = mask & ~words[w];
+            words[w] |= added;
+            size += Long.bitCount(added);
+            summary[w >>> 6] |= 1L << w;
+        }
+    }
+
+    /**
+     * Replaces the contents of this set with those of another set of the same board size.
+     * Words past the board are zero in both sets, so only the board's words are copied.
+     * @param other set to copy
+     */
+    public void copyFrom(CellSet other){
+        int numWords = (numCells + 63) >>> 6;
+
+        System.arraycopy(other.words, 0, words, 0, numWords);
+        System.arraycopy(other.summary, 0, summary, 0, (numWords + 63) >>> 6);
+        size = other.size;
+    }
+
+    /**
+     * Removes a cell from the set.
+     * @param i cell index
+     * @return true if the cell was in the set
+     */
+    public boolean remove(int i){
+        long bit = 1L << i;
+        int w = i >>> 6;
+
+        if((words[w] & bit) == 0){
+            return false;
+        }
+        words[w] &= ~bit;
+        if(words[w] == 0){
+            summary[w >>> 6] &= ~(1L << w);
+        }
+        size--;
+        return true;
+    }
+
+    /**
+     * Tests whether a cell is in the set.
+     * @param i cell index
+     * @return true if the cell is in the set
+     */
+    public boolean contains(int i){
+        return (words[i >>> 6] & (1L << i)) != 0;
+    }
+
+    /**
+     * Finds the first cell in the set at or after an index.
+     * @param from cell index to start searching at
+     * @return next cell index in the set, or -1 if there is none
+     */
+    public int nextSetBit(int from){
+        int w = from >>> 6;
+        long word;
+
+        if(from >= numCells){
+            return -1;
+        }
+        word = words[w] & (-1L << from);
+        while(word == 0){
+            w = nextWord(w + 1);
+            if(w < 0){
+                return -1;
+            }
+            word = words[w];
+        }
+        return (w << 6) + Long.numberOfTrailingZeros(word);
+    }
+
+    /**
+     * Finds the first word at or after an index that may hold cells, using the summary.
+     * @param from word index to start searching at
+     * @return next word index marked in the summary, or -1 if there is none
+     */
+    private int nextWord(int from){
+        int s = from >>> 6;
+        long bits;
+
+        if(from >= words.length){
+            return -1;
+        }
+        bits = summary[s] & (-1L << from);
+        while(bits == 0){
+            if(++s == summary.length){
+                return -1;
+            }
+            bits = summary[s];
+        }
+        return (s << 6) + Long.numberOfTrailingZeros(bits);
+    }
+
+    /**
+     * Finds the cell with a given rank among the cells in the set.
+     * @param k zero-based rank, less than size()
+     * @return index of the k-th cell in increasing order, or -1 if k is out of range
+     */
+    public int select(int k){
+        long word;
+        int n;
+
+        if(k < 0 || k >= size){
+            return -1;
+        }
+        for(int w = nextWord(0); w >= 0; w = nextWord(w + 1)){
+            word = words[w];
+            n = Long.bitCount(word);
+            if(k < n){
+                for(int j = 0; j < k; j++){
+                    word &= word - 1; // Drop the lowest set bit
+                }
+                return (w << 6) + Long.numberOfTrailingZeros(word);
+            }
+            k -= n;
+        }
+        return -1;
+    }
+
+    /**
+     * Get method for size.
+     * @return number of cells in the set
+     */
+    public int size(){
+        return size;
+    }
+
+    /**
+     * Checks whether the set has no cells.
+     * @return true if the set is empty
+     */
+    public boolean isEmpty(){
+        return size == 0;
+    }
+
+    /**
+     * Removes every cell from the set, zeroing only the words the summary marks.
+     */
+    public void clear(){
+        long bits;
+
+        if(size > 0){
+            for(int s = 0; s < summary.length; s++){
+                bits = summary[s];
+                while(bits != 0){
+                    words[(s << 6) + Long.numberOfTrailingZeros(bits)] = 0L;
+                    bits &= bits - 1;
+                }
+                summary[s] = 0L;
+            }
+            size = 0;
+        }
+    }
+}
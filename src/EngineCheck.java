@@ -0,0 +1,558 @@
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * This class plays GemManager side by side with Baseline, a frozen copy of the
+ * original engine, and asserts that every step of every cascade flags the same number
+ * of Gems, scores the same turn score and leaves the same board.  The original engine
+ * scores a run only if its scan reaches a Gem of the run not yet flagged, so the turn
+ * scores check that GemManager reproduces the order of that scan.  Games are drawn
+ * from a fixed seed over board sizes and symbol counts, and each move swaps a random
+ * adjacent pair, matching or not.  It exits with status 1 if any game differs.
+ *
+ * The games on large boards run on a pool of POOL_WORKERS workers, so their steps
+ * removing thousands of Gems draw every new type first and shift stripes of columns in
+ * parallel, on any machine.  Boards too large for the original engine are checked
+ * against GemManager itself: the same game resolved on the calling thread and on the
+ * pool, where large checks also run in parallel stripes, must agree at every step.
+ * Usage: java EngineCheck
+ */
+public class EngineCheck{
+    private static final long SEED = 1;
+    private static final int POOL_WORKERS = 4;
+
+    private static long steps; // Checks compared by the current check
+
+    public static void main(String[] args){
+        boolean passed = true;
+
+        passed &= checkGames("boards up to 14x14", 3000, 3, 14, 60);
+        passed &= checkGames("boards up to 64x64", 100, 15, 64, 30);
+        passed &= checkLarge("256x256 pooled", 256, 256, 3, 20);
+        passed &= checkLarge("128x520 pooled", 128, 520, 3, 20);
+        passed &= checkParallel(256, 256, 3, 30);
+        passed &= checkParallel(100, 700, 4, 100);
+        passed &= checkParallel(513, 200, 5, 100);
+        passed &= checkParallel(1024, 1024, 6, 30);
+
+        if(!passed){
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Plays games on random board sizes and symbol counts, each dealt from its own seed.
+     * @param name label for the report
+     * @param games number of games to play
+     * @param minSize fewest rows and cols of a board
+     * @param maxSize most rows and cols of a board
+     * @param moves swaps played in each game after the dealt board settles
+     * @return true if every game matched the original engine
+     */
+    private static boolean checkGames(String name, int games, int minSize, int maxSize, int moves){
+        Random rand = new Random(SEED);
+        boolean passed = true;
+        int rows, cols, symb;
+
+        steps = 0;
+        for(int g = 0; g < games && passed; g++){
+            rows = minSize + rand.nextInt(maxSize - minSize + 1);
+            cols = minSize + rand.nextInt(maxSize - minSize + 1);
+            symb = 3 + rand.nextInt(6);
+            passed = play(rows, cols, symb, rand.nextLong(), moves, rand, null);
+        }
+        System.out.println(name + ": " + steps + " steps " + (passed ? "identical" : "differ"));
+        return passed;
+    }
+
+    /**
+     * Plays games on one board size of at least 65536 cells with 8, 7, 6... symbols,
+     * resolving large steps on a pool of POOL_WORKERS workers.  The first check of each
+     * dealt board flags several thousand Gems, so the first shift runs in parallel
+     * stripes.  Fewer symbols would flag so many that the original engine's contains
+     * tests take minutes.
+     * @param name label for the report
+     * @param rows num rows for board
+     * @param cols num cols for board, at least two stripes wide
+     * @param games number of games to play
+     * @param moves swaps played in each game after the dealt board settles
+     * @return true if every game matched the original engine
+     */
+    private static boolean checkLarge(String name, int rows, int cols, int games, int moves){
+        ForkJoinPool pool = new ForkJoinPool(POOL_WORKERS);
+        Random rand = new Random(SEED);
+        boolean passed = true;
+
+        steps = 0;
+        try{
+            for(int g = 0; g < games && passed; g++){
+                passed = play(rows, cols, 8 - g, rand.nextLong(), moves, rand, pool);
+            }
+        } finally{
+            pool.shutdown();
+        }
+        System.out.println(name + ": " + steps + " steps " + (passed ? "identical" : "differ"));
+        return passed;
+    }
+
+    /**
+     * Plays one game on GemManager twice, resolving every step on the calling thread and
+     * large steps on a pool of POOL_WORKERS workers, and prints the first difference.
+     * @param rows num rows for board
+     * @param cols num cols for board, at least two stripes wide
+     * @param symb num symbols to be used on board
+     * @param moves swaps played after the dealt board settles
+     * @return true if both games agreed at every step
+     */
+    private static boolean checkParallel(int rows, int cols, int symb, int moves){
+        ForkJoinPool pool = new ForkJoinPool(POOL_WORKERS);
+        Random rand = new Random(SEED);
+        long seed = rand.nextLong();
+        GemManager seq = new GemManager(rows, cols, symb, seed);
+        GemManager par = new GemManager(rows, cols, symb, seed);
+        String diff = null;
+        int x, y;
+
+        steps = 0;
+        seq.setPool(null);
+        par.setPool(pool);
+        try{
+            for(int m = 0; m <= moves && diff == null; m++){
+                if(m > 0){
+                    x = rand.nextInt(cols - 1);
+                    y = rand.nextInt(rows);
+                    seq.swapGems(x, y, x + 1, y);
+                    par.swapGems(x, y, x + 1, y);
+                }
+                diff = settle(seq, par);
+                if(diff != null){
+                    System.out.println(rows + "x" + cols + " symb " + symb + " seed " + seed + " move " + m + ": " + diff);
+                }
+            }
+        } finally{
+            pool.shutdown();
+        }
+        System.out.println(rows + "x" + cols + " parallel: " + steps + " steps " + (diff == null ? "identical" : "differ"));
+        return diff == null;
+    }
+
+    /**
+     * Plays one game on both engines, settling the dealt board and then swapping and
+     * settling, and prints the first difference.
+     * @param rows num rows for board
+     * @param cols num cols for board
+     * @param symb num symbols to be used on board
+     * @param seed seed both engines deal and refill from
+     * @param moves swaps to play after the dealt board settles
+     * @param rand random num generator picking the swaps
+     * @param pool pool to resolve large steps on, or null to resolve them sequentially
+     * @return true if both engines agreed at every step
+     */
+    private static boolean play(int rows, int cols, int symb, long seed, int moves, Random rand, ForkJoinPool pool){
+        Baseline base = new Baseline(rows, cols, symb, seed);
+        GemManager game = new GemManager(rows, cols, symb, seed);
+        String diff = null;
+        int x, y;
+
+        game.setPool(pool);
+        for(int m = 0; m <= moves && diff == null; m++){
+            if(m > 0){
+                if(rand.nextBoolean()){
+                    x = rand.nextInt(cols - 1);
+                    y = rand.nextInt(rows);
+                    base.swapGems(x, y, x + 1, y);
+                    game.swapGems(x, y, x + 1, y);
+                } else {
+                    x = rand.nextInt(cols);
+                    y = rand.nextInt(rows - 1);
+                    base.swapGems(x, y, x, y + 1);
+                    game.swapGems(x, y, x, y + 1);
+                }
+            }
+            diff = settle(base, game);
+            if(diff != null){
+                System.out.println(rows + "x" + cols + " symb " + symb + " seed " + seed + " move " + m + ": " + diff);
+            }
+        }
+        return diff == null;
+    }
+
+    /**
+     * Checks, removes and shifts on both engines until the original finds no match.
+     * @param base original engine
+     * @param game engine under test
+     * @return description of the first difference, or null if there was none
+     */
+    private static String settle(Baseline base, GemManager game){
+        int flagged, found;
+
+        while(true){
+            flagged = base.checkBoard();
+            found = game.checkBoard();
+            steps++;
+            if(found != flagged){
+                return "flagged " + found + " Gems, expected " + flagged;
+            }
+            if(game.getTurnScore() != base.getTurnScore()){
+                return "turn score " + game.getTurnScore() + ", expected " + base.getTurnScore();
+            }
+            if(flagged == 0){
+                return null;
+            }
+            base.changeType();
+            game.changeType();
+            base.shiftGems();
+            game.shiftGems();
+            for(int y = 0; y < base.getNumRows(); y++){
+                for(int x = 0; x < base.getNumCols(); x++){
+                    if(game.getType(x, y) != base.getGem(x, y).getType()){
+                        return "type " + game.getType(x, y) + " at (" + x + ", " + y + "), expected "
+                            + base.getGem(x, y).getType();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks, removes and shifts on both games until neither finds a match.
+     * @param seq game resolved on the calling thread
+     * @param par game resolved on the pool
+     * @return description of the first difference, or null if there was none
+     */
+    private static String settle(GemManager seq, GemManager par){
+        int flagged, found;
+
+        while(true){
+            flagged = seq.checkBoard();
+            found = par.checkBoard();
+            steps++;
+            if(found != flagged){
+                return "flagged " + found + " Gems, expected " + flagged;
+            }
+            if(par.getTurnScore() != seq.getTurnScore()){
+                return "turn score " + par.getTurnScore() + ", expected " + seq.getTurnScore();
+            }
+            if(flagged == 0){
+                return null;
+            }
+            seq.changeType();
+            par.changeType();
+            seq.shiftGems();
+            par.shiftGems();
+            for(int y = 0; y < seq.getNumRows(); y++){
+                for(int x = 0; x < seq.getNumCols(); x++){
+                    if(par.getType(x, y) != seq.getType(x, y)){
+                        return "type " + par.getType(x, y) + " at (" + x + ", " + y + "), expected " + seq.getType(x, y);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The GemManager bookkeeping as first written: Gem objects on a 2D array, linked
+     * lists of Gems to check and remove, and a contains test before each Gem is flagged.
+     * Only the game logic is kept.  Do not change it; it is the reference the engine is
+     * checked against.
+     */
+    private static class Baseline{
+        // Instance Variables
+        private int numRows, numCols, numSymbols, turnScore;
+        private int[] numDeleteCol;
+        private Gem[][] board; // 2D Array to represent board
+        private List<Gem> gemsToRemove; // Collection of Gems flagged for removal
+        private List<Gem> gemsToCheck; // Collection of Gems to check for matches after board shift
+        private Random rand;
+        private enum Direction{N, S, E, W};  // Used for match checking purposes
+
+        /**
+         * Constructor with the seed for the random num generator.
+         * @param rows num rows for board
+         * @param cols num cols for board
+         * @param symb num symbols to be used on board
+         * @param randSeed constant for random num generator
+         */
+        Baseline(int rows, int cols, int symb, long randSeed){
+            this.numRows = rows;
+            this.numCols = cols;
+            this.numSymbols = symb;
+            numDeleteCol = new int[numCols]; // Keeps track of num to remove per col
+            rand = new Random(randSeed);
+            board = new Gem[numCols][numRows];
+            gemsToRemove = new LinkedList<Gem>();
+            gemsToCheck = new LinkedList<Gem>();
+            turnScore = 0;
+
+            initBoard();
+        }
+
+        /**
+         * Get method for numRows.
+         * @return number of rows in board
+         */
+        int getNumRows(){
+            return numRows;
+        }
+
+        /**
+         * Get method for numCols.
+         * @return number of columns in board
+         */
+        int getNumCols(){
+            return numCols;
+        }
+
+        /**
+         * Get method for specific Gem.
+         * @param x x-coordinate of Gem
+         * @param y y-coordinate of Gem
+         * @return Gem at (x,y) location in board
+         */
+        Gem getGem(int x, int y){
+            return board[x][y];
+        }
+
+        /**
+         * Get method for turnScore.
+         * @return score gained during each cascade
+         */
+        int getTurnScore(){
+            return turnScore;
+        }
+
+        /**
+         * Initialize the board with random Gems to fill the rows and cols.
+         */
+        void initBoard(){
+            for(int y = 0; y < numRows; y++){
+                for(int x = 0; x < numCols; x++){
+                    board[x][y] = new Gem(x,y,randType());
+                    gemsToCheck.add(board[x][y]);
+                }
+            }
+        }
+
+        /**
+         * Selects random number based upon how many symbols are in game
+         * @return random number
+         */
+        int randType(){
+            return rand.nextInt(numSymbols) + 1; // +1 because zero is reserved type
+        }
+
+        /**
+         * Find matches of 3 or more.
+         * @return Size of Collection of Gems flagged for removal
+         */
+        int checkBoard(){
+            int x, y;
+
+            turnScore = 0;
+
+            for(Gem gem: gemsToCheck){
+                x = gem.getX();
+                y = gem.getY();
+                horizontalCheck(x,y);
+                verticalCheck(x,y);
+            }
+            gemsToCheck.clear();
+
+            return gemsToRemove.size();
+        }
+
+        /**
+         * Checks to the left and right for horizontal combos of 3 or more. Flags pieces
+         * for removal in the event of chains of 3 or more.
+         * @param x0 x coordinate for starting point
+         * @param y0 y coordinate for starting point
+         */
+        void horizontalCheck(int x0, int y0){
+            int n1, n2, totalInRow;
+            boolean scoreFlag = false; // Ensures proper scoring with gems that are in 2 matching strings.
+
+            n1 = numInRow(x0, y0, Direction.E);
+            n2 = numInRow(x0, y0, Direction.W);
+            totalInRow = n1 + n2 + 1;
+
+            if(totalInRow >= 3){
+                for(int x = x0 - n2; x <= x0 + n1; x++){
+                    if(!gemsToRemove.contains(board[x][y0])){
+                        if(!scoreFlag){
+                            scoreFlag = true;
+                            chainScore(totalInRow);
+                        }
+                        gemsToRemove.add(board[x][y0]);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Checks up and down for vertical combos of 3 or more. Flags pieces for removal
+         * in the event of chains of 3 or more.
+         * @param x0 x coordinate for starting point
+         * @param y0 y coordinate for starting point
+         */
+        void verticalCheck(int x0, int y0){
+            int n1, n2, totalInRow;
+            boolean scoreFlag = false; // Ensures proper scoring with gems that are in 2 matching strings.
+
+            n1 = numInRow(x0, y0, Direction.N);
+            n2 = numInRow(x0, y0, Direction.S);
+            totalInRow = n1 + n2 + 1;
+
+            if(totalInRow >= 3){
+                for(int y = y0 - n2; y <= y0 + n1; y++){
+                    if(!gemsToRemove.contains(board[x0][y])){
+                        if(!scoreFlag){
+                            scoreFlag = true;
+                            chainScore(totalInRow);
+                        }
+                        gemsToRemove.add(board[x0][y]);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Searches in indicated Direction for matching Gems.  Keeps count. Ensures
+         * search is conducted within the bounds of the board.
+         * @param x0 x coord of starting point
+         * @param y0 y coord of starting point
+         * @param dir Direction to search
+         * @return num of consecutive symbols
+         */
+        int numInRow(int x0, int y0, Direction dir){
+            int[] newPos;
+            int type = board[x0][y0].getType();
+            int x = x0;
+            int y = y0;
+            int count = 0;
+
+            while(true){
+                newPos = move(x, y, dir);
+                x = newPos[0];
+                y = newPos[1];
+                if(!isInBoard(x,y)){
+                    break;
+                }
+                if(type == board[x][y].getType()){
+                    count += 1;
+                }
+                else{
+                    break;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * Determines if the row and column parameter are in the board.
+         * @param x0 x coordinate to check
+         * @param y0 y coordinate to check
+         * @return false if coordinate is not in the board.
+         */
+        boolean isInBoard(int x0, int y0){
+            return (x0 >= 0 && x0 < numCols) && (y0 >= 0 && y0 < numRows);
+        }
+
+        /**
+         * Changes coordinates in proper direction for searching for match purposes.
+         * @param x0 x coord of starting point
+         * @param y0 y coord of starting point
+         * @param dir Direction to search
+         * @return int array of new coordinates
+         */
+        int[] move(int x0, int y0, Direction dir){
+            int newPos[] = {x0, y0};
+
+            switch(dir){
+                case N:
+                    newPos[1] += 1;
+                    break;
+                case S:
+                    newPos[1] -= 1;
+                    break;
+                case W:
+                    newPos[0] -= 1;
+                    break;
+                case E:
+                    newPos[0] += 1;
+            }
+            return newPos;
+        }
+
+        /**
+         * Calculates score for each horizontal and vertical matching string of Gems.
+         * @param n number of Gems matching string.
+         */
+        void chainScore(int n){
+            turnScore += 100 * n + (n - 3) * 100;
+        }
+
+        /**
+         * Removes Gems that are flagged for removal.
+         */
+        void changeType(){
+            for(int x = 0; x < numCols; x++){
+                numDeleteCol[x] = 0;
+            }
+            // Change type of all Gems in  gemsToRemove to 0
+            for(Gem gemDelete : gemsToRemove){
+                gemDelete.setType(0);
+                numDeleteCol[gemDelete.getX()]++;
+            }
+
+            gemsToRemove.clear(); // Empty after flags are changed on current play
+        }
+
+        /**
+         * Loop through each column starting at the top, shifting and replacing
+         * Gems as necessary
+         */
+        void shiftGems(){
+            LinkedList<Integer> types = new LinkedList<Integer>(); // Holds shifting Gems
+            int numDelete, type;
+            Gem gem;
+
+            for(int x = 0; x < numCols; x++){
+                numDelete = numDeleteCol[x];
+                types.clear();
+                for(int i = 0; i < numDelete; i++){
+                    types.add(randType());
+                }
+                for(int y = 0; y < numRows; y++){
+                    if(types.size() == 0){
+                        break;
+                    }
+                    gem = board[x][y];
+                    type = gem.getType();
+                    if(type != 0){
+                        types.add(type);
+                    }
+                    gem.setType(types.pop());
+                    gemsToCheck.add(gem);
+                }
+            }
+        }
+
+        /**
+         * Swaps Gem types of the two board positions selected.
+         * @param x1 x coordinate of first Gem
+         * @param y1 y coordinate of first Gem
+         * @param x2 x coordinate of second Gem
+         * @param y2 y coordinate of second Gem
+         */
+        void swapGems(int x1, int y1, int x2, int y2){
+            int tempType = board[x1][y1].getType();
+
+            gemsToCheck.add(board[x1][y1]);
+            gemsToCheck.add(board[x2][y2]);
+
+            board[x1][y1].setType(board[x2][y2].getType());
+            board[x2][y2].setType(tempType);
+        }
+    }
+}
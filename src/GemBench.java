@@ -0,0 +1,463 @@
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * This class benchmarks the engine work that the JMH suite in jmh/gembench does not
+ * cover.  The suite, built by the pom, times initBoard, swapGems, the cascade stages and
+ * the full cascade on pools of 1 to N workers; this runner needs nothing beyond the JDK
+ * and times the rest.  Each
+ * benchmark warms up, then runs several timed iterations and reports the mean time per
+ * operation with its standard deviation, and the bytes allocated per operation read
+ * from the thread's allocation counter (the figure a gc profiler reports as
+ * alloc.rate.norm).  The suite builds its boards and swaps with settled and swap.
+ *
+ * Benchmarks:
+ *   resolve  a random adjacent swap played by resolve() into a reused CascadeEvents
+ *   moves    MoveFinder.update after each cascade (timed alone) and a full rebuild
+ *   scale    legal moves from a fixed seed, each timed through its cascade and
+ *            MoveFinder.update, per move and per changed cell
+ *   scan     a full-board match scan with MatchScanner next to the scalar numInRow walk
+ *            from every cell, then initBoard and the full checkBoard it leads to
+ *   deal     a random board settled by cascading it, next to a stable board dealt in one pass
+ *   snapshot snapshot into a reused array and restore, next to a copy through the constructor
+ *   churn    short games of CHURN_MOVES hinted moves, each on a new GemManager and
+ *            MoveFinder and then on ones reused through a GemPool, with the allocation
+ *            rate and the collections and GC time seen while measuring
+ *   bot      GemBot.chooseMove with one worker and with a worker per core, looking one
+ *            move ahead on boards up to 64x64 and two moves ahead up to 12x12
+ *
+ * Usage: java GemBench [--bench a,b] [--sizes 8,9,...] [--symbols S[-S2]]
+ *                      [--warmup MS] [--time MS] [--iterations N]
+ * With 3 symbols a single swap on a board of 256x256 or more can cascade for a second
+ * or longer, so full sweeps over those sizes take a while.
+ */
+public class GemBench{
+    private static final String[] BENCHES = {"resolve", "moves", "scale", "scan", "deal", "snapshot", "churn", "bot"};
+    private static final int[] SIZES = {8, 9, 10, 11, 12, 64, 256, 1024};
+    private static final int CHURN_MOVES = 8; // Moves played in each game of the churn bench
+
+    private static com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private static volatile long sink; // Keeps results alive so the JIT cannot drop the work
+
+    private static long warmupMs = 300, timeMs = 500;
+    private static int iterations = 5;
+
+    public static void main(String[] args){
+        String[] benches = BENCHES;
+        int[] sizes = SIZES;
+        int[] symbs = {3, 8};
+
+        try{
+            for(int i = 0; i < args.length; i++){
+                String arg = args[i];
+                String value = args[++i];
+
+                if(arg.equals("--bench")){
+                    benches = value.split(",");
+                } else if(arg.equals("--sizes")){
+                    String[] parts = value.split(",");
+                    sizes = new int[parts.length];
+                    for(int p = 0; p < parts.length; p++){
+                        sizes[p] = Integer.parseInt(parts[p]);
+                    }
+                } else if(arg.equals("--symbols")){
+                    int dash = value.indexOf('-');
+                    symbs = dash < 0 ? new int[]{Integer.parseInt(value), Integer.parseInt(value)}
+                        : new int[]{Integer.parseInt(value.substring(0, dash)), Integer.parseInt(value.substring(dash + 1))};
+                } else if(arg.equals("--warmup")){
+                    warmupMs = Long.parseLong(value);
+                } else if(arg.equals("--time")){
+                    timeMs = Long.parseLong(value);
+                } else if(arg.equals("--iterations")){
+                    iterations = Integer.parseInt(value);
+                } else {
+                    throw new IllegalArgumentException("Unknown option: " + arg);
+                }
+            }
+        } catch(RuntimeException ex){
+            System.err.println(ex.getMessage());
+            System.err.println("Usage: java GemBench [--bench resolve,moves,scale,scan,deal,snapshot,churn,bot] [--sizes 8,9,...]"
+                + " [--symbols S[-S2]] [--warmup MS] [--time MS] [--iterations N]");
+            System.exit(1);
+        }
+
+        System.out.printf("%-12s %6s %5s %14s %12s %10s%n", "Benchmark", "size", "symb", "ns/op", "error", "B/op");
+        for(String bench : benches){
+            for(int size : sizes){
+                for(int symb = symbs[0]; symb <= symbs[1]; symb++){
+                    run(bench, size, symb);
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds a settled square board, the starting point of every benchmark.
+     * @param size num rows and cols for board
+     * @param symb num symbols to be used on board
+     * @return settled GemManager
+     */
+    static GemManager settled(int size, int symb){
+        GemManager game = new GemManager(size, size, symb, 16);
+
+        game.cascade();
+        return game;
+    }
+
+    /**
+     * Runs one benchmark for one board configuration and prints its rows.
+     * @param bench benchmark name
+     * @param size num rows and cols for board
+     * @param symb num symbols to be used on board
+     */
+    private static void run(String bench, int size, int symb){
+        final GemManager game = settled(size, symb);
+
+        if(bench.equals("resolve")){
+            final CascadeEvents events = new CascadeEvents();
+            report(bench, size, symb, measure(new Op(){
+                public long run(int i){
+                    int hash = i * 0x9E3779B9;
+
+                    return game.resolve(Move.of((hash >>> 8) % (game.getNumCols() - 1), (hash >>> 20) % game.getNumRows(),
+                                                false, game.getNumCols()), events) + events.getNumChains();
+                }
+            }));
+        } else if(bench.equals("moves")){
+            moves(size, symb, game);
+        } else if(bench.equals("scale")){
+            scale(size, symb, game);
+        } else if(bench.equals("scan")){
+            report("scanSwar", size, symb, measure(new Op(){
+                public long run(int i){
+                    return game.countMatched();
+                }
+            }));
+            report("scanScalar", size, symb, measure(new Op(){
+                public long run(int i){
+                    return game.countMatchedScalar();
+                }
+            }));
+            report("initCheck", size, symb, measure(new Op(){
+                public long run(int i){
+                    game.initBoard();
+                    int flagged = game.checkBoard();
+                    game.changeType(); // Leaves the flags empty for the next check
+                    return flagged;
+                }
+            }));
+        } else if(bench.equals("deal")){
+            final GemManager stable = new GemManager(size, size, symb, 16, true);
+            report("dealSettle", size, symb, measure(new Op(){
+                public long run(int i){
+                    game.initBoard();
+                    return game.cascade();
+                }
+            }));
+            report("dealStable", size, symb, measure(new Op(){
+                public long run(int i){
+                    stable.initBoard();
+                    return stable.cascade();
+                }
+            }));
+        } else if(bench.equals("snapshot")){
+            final byte[] saved = game.snapshot();
+            report("snapshot", size, symb, measure(new Op(){
+                public long run(int i){
+                    game.snapshot(saved);
+                    game.restore(saved);
+                    return saved[i & 7];
+                }
+            }));
+            report("copy", size, symb, measure(new Op(){
+                public long run(int i){
+                    return new GemManager(game, i).getType(0, 0);
+                }
+            }));
+        } else if(bench.equals("churn")){
+            churn(size, symb);
+        } else if(bench.equals("bot")){
+            bot(size, symb, game);
+        } else {
+            throw new IllegalArgumentException("Unknown benchmark: " + bench);
+        }
+    }
+
+    /**
+     * Swaps a pseudo-randomly chosen Gem with its right-hand neighbour.
+     * @param game board to swap on
+     * @param i operation counter used to pick the swap
+     */
+    static void swap(GemManager game, int i){
+        int hash = i * 0x9E3779B9;
+
+        game.swapGems((hash >>> 8) % (game.getNumCols() - 1), (hash >>> 20) % game.getNumRows(),
+                      (hash >>> 8) % (game.getNumCols() - 1) + 1, (hash >>> 20) % game.getNumRows());
+    }
+
+    /**
+     * Times MoveFinder.update after each swap and cascade, then a full rebuild.
+     * @param size num rows and cols for board
+     * @param symb num symbols used on board
+     * @param game settled board to play on
+     */
+    private static void moves(int size, int symb, GemManager game){
+        final MoveFinder finder = new MoveFinder(game);
+        long nanos = 0, calls = 0, t0;
+        long deadline = System.nanoTime() + (warmupMs + timeMs * iterations) * 1000000L;
+        long warm = System.nanoTime() + warmupMs * 1000000L;
+        int i = 0;
+
+        while((t0 = System.nanoTime()) < deadline){
+            swap(game, i++);
+            game.cascade();
+            t0 = System.nanoTime();
+            finder.update();
+            if(t0 > warm){
+                nanos += System.nanoTime() - t0;
+                calls++;
+            }
+        }
+        System.out.printf("%-12s %6d %5d %14.1f %12s %10s%n", "moveUpdate", size, symb,
+                          (double) nanos / Math.max(calls, 1), "-", "-");
+        report("moveRebuild", size, symb, measure(new Op(){
+            public long run(int i){
+                finder.rebuild();
+                return finder.getCount();
+            }
+        }));
+    }
+
+    /**
+     * Plays legal moves picked with a fixed seed and times each one's swap, cascade and
+     * MoveFinder.update, all the work a move costs the engine.  The cells changed by each
+     * move are counted as well: if the cost per changed cell stays flat as the board
+     * grows, a move costs its cascade rather than the board area.  The same seed plays
+     * the same moves on every build, so builds can be compared move for move.
+     * @param size num rows and cols for board
+     * @param symb num symbols used on board
+     * @param game settled board to play on
+     */
+    private static void scale(int size, int symb, GemManager game){
+        MoveFinder finder = new MoveFinder(game);
+        Random rand = new Random(1);
+        long nanos = 0, calls = 0, cells = 0, t0, t1;
+        long deadline = System.nanoTime() + (warmupMs + timeMs * iterations) * 1000000L;
+        long warm = System.nanoTime() + warmupMs * 1000000L;
+        int move;
+
+        while(System.nanoTime() < deadline){
+            move = finder.randomMove(rand);
+            if(move == Move.NONE){
+                finder.reshuffle();
+                continue;
+            }
+            t0 = System.nanoTime();
+            game.swapGems(move);
+            game.cascade();
+            if(t0 > warm){
+                cells += game.getChangedCells().size();
+            }
+            finder.update();
+            t1 = System.nanoTime();
+            if(t0 > warm){
+                nanos += t1 - t0;
+                calls++;
+            }
+        }
+        System.out.printf("%-12s %6d %5d %14.1f %12s %10s%n", "scaleMove", size, symb,
+                          (double) nanos / Math.max(calls, 1), "-", "-");
+        System.out.printf("%-12s %6d %5d %14.1f %12s %10s%n", "scaleCell", size, symb,
+                          (double) nanos / Math.max(cells, 1), "-", "-");
+    }
+
+    /**
+     * Starts and ends short games as a server or simulation does, first allocating a new
+     * GemManager and MoveFinder for every game and then reusing them through a GemPool.
+     * Each result is followed by its allocation rate and the collections and GC time
+     * seen while it was measured.
+     * @param size num rows and cols for board
+     * @param symb num symbols used on board
+     */
+    private static void churn(final int size, final int symb){
+        final GemPool pool = new GemPool(1, true);
+        final MoveFinder finder = new MoveFinder(pool.acquire(size, size, symb, 0));
+        long[] gc = gcTotals();
+        double[] result;
+
+        result = measure(new Op(){
+            public long run(int i){
+                GemManager game = new GemManager(size, size, symb, i, true);
+
+                return churnGame(game, new MoveFinder(game));
+            }
+        });
+        report("churnNew", size, symb, result);
+        gc = churnGc(gc, result);
+        pool.release(finder.getGame());
+        result = measure(new Op(){
+            public long run(int i){
+                GemManager game = pool.acquire(size, size, symb, i);
+                long score;
+
+                finder.reset(game);
+                score = churnGame(game, finder);
+                pool.release(game);
+                return score;
+            }
+        });
+        report("churnPool", size, symb, result);
+        churnGc(gc, result);
+    }
+
+    /**
+     * Plays one short game of hinted moves.
+     * @param game newly dealt board
+     * @param finder finder tracking the board
+     * @return score of the game
+     */
+    private static long churnGame(GemManager game, MoveFinder finder){
+        long score = 0;
+        int move;
+
+        for(int m = 0; m < CHURN_MOVES; m++){
+            move = finder.hint();
+            if(move == Move.NONE){
+                finder.reshuffle();
+                continue;
+            }
+            game.swapGems(move);
+            score += game.cascade();
+            finder.update();
+        }
+        return score;
+    }
+
+    /**
+     * Prints the allocation rate of a churn result and the collections since a reading.
+     * @param before collections and GC milliseconds read before the result was measured
+     * @param result mean ns/op, error and bytes per op from measure
+     * @return collections and GC milliseconds now
+     */
+    private static long[] churnGc(long[] before, double[] result){
+        long[] after = gcTotals();
+
+        System.out.printf("  %.0f MB/s allocated, %d collections, %d ms in GC%n",
+                          result[2] / result[0] * 1e3, after[0] - before[0], after[1] - before[1]);
+        return after;
+    }
+
+    /**
+     * Sums the collections and collection time of every garbage collector.
+     * @return number of collections and milliseconds spent collecting since startup
+     */
+    private static long[] gcTotals(){
+        long[] totals = new long[2];
+
+        for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()){
+            totals[0] += Math.max(gc.getCollectionCount(), 0);
+            totals[1] += Math.max(gc.getCollectionTime(), 0);
+        }
+        return totals;
+    }
+
+    /**
+     * Times GemBot.chooseMove on a pool of one worker and on a pool of a worker per core,
+     * so the speedup of the parallel search can be read off.  The search works on copies,
+     * so the board stays the same for every call.  B/op counts only the calling thread,
+     * not the pool's workers.
+     * @param size num rows and cols for board
+     * @param symb num symbols used on board
+     * @param game settled board to search
+     */
+    private static void bot(int size, int symb, final GemManager game){
+        int cores = Runtime.getRuntime().availableProcessors();
+        int maxDepth = size <= 12 ? 2 : size <= 64 ? 1 : 0;
+
+        for(int depth = 1; depth <= maxDepth; depth++){
+            for(int workers : cores > 1 ? new int[]{1, cores} : new int[]{1}){
+                ForkJoinPool pool = new ForkJoinPool(workers);
+                final GemBot bot = new GemBot(depth, 4, 1L << 40, pool); // No time limit
+                final Random rand = new Random(1);
+
+                report("bot-d" + depth + "-p" + workers, size, symb, measure(new Op(){
+                    public long run(int i){
+                        return bot.chooseMove(game, rand);
+                    }
+                }));
+                pool.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Warms up an operation, then times iterations of it in batches.
+     * @param op operation to measure
+     * @return mean ns/op, standard deviation of ns/op across iterations, bytes per op
+     */
+    static double[] measure(Op op){
+        long id = Thread.currentThread().getId();
+        double[] perOp = new double[iterations];
+        long ops = 0, bytes, start, elapsed;
+        long result = 0;
+        int i = 0, batch;
+        double mean = 0, var = 0;
+
+        start = System.nanoTime();
+        while(System.nanoTime() - start < warmupMs * 1000000L){
+            result += op.run(i++);
+        }
+        bytes = threads.getThreadAllocatedBytes(id);
+        for(int it = 0; it < iterations; it++){
+            long itOps = 0;
+            batch = 1;
+            start = System.nanoTime();
+            do{
+                for(int b = 0; b < batch; b++){
+                    result += op.run(i++);
+                }
+                itOps += batch;
+                batch = Math.min(batch * 2, 1 << 16);
+                elapsed = System.nanoTime() - start;
+            } while(elapsed < timeMs * 1000000L);
+            perOp[it] = (double) elapsed / itOps;
+            ops += itOps;
+        }
+        bytes = threads.getThreadAllocatedBytes(id) - bytes;
+        sink = result;
+
+        for(double d : perOp){
+            mean += d / iterations;
+        }
+        for(double d : perOp){
+            var += (d - mean) * (d - mean) / Math.max(iterations - 1, 1);
+        }
+        return new double[]{mean, Math.sqrt(var), (double) bytes / ops};
+    }
+
+    /**
+     * Prints one result row.
+     * @param bench benchmark name
+     * @param size num rows and cols for board
+     * @param symb num symbols used on board
+     * @param result mean ns/op, error and bytes per op from measure
+     */
+    static void report(String bench, int size, int symb, double[] result){
+        System.out.printf("%-12s %6d %5d %14.1f %12.1f %10.1f%n", bench, size, symb, result[0], result[1], result[2]);
+    }
+
+    /**
+     * A benchmarked operation.
+     */
+    interface Op{
+        /**
+         * Performs the operation once.
+         * @param i operation counter
+         * @return any value derived from the work, consumed so it is not optimised away
+         */
+        long run(int i);
+    }
+}
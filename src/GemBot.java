@@ -0,0 +1,247 @@
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class is a computer player that looks ahead a number of moves.  Each matching
+ * swap is played out on a copy of the board, and its value is the cascade score plus
+ * the value of the best following move, averaged over several draws of the new Gems
+ * that fall in.  Candidate moves are searched in parallel on a ForkJoinPool, one task
+ * per move, and deeper levels reuse one scratch board per level so a task allocates
+ * only when it starts.
+ *
+ * The search deepens one level at a time until the depth limit or the time budget is
+ * reached, and answers with the best move of the deepest level that finished.  The
+ * first level is always finished, however long it takes.
+ */
+public class GemBot implements MovePolicy{
+    // Instance Variables
+    private int depth, samples;
+    private long budgetNanos;
+    private ForkJoinPool pool;
+    private int lastDepth; // Deepest level finished by the last chooseMove
+    private double lastValue; // Expected value of the last chosen move
+
+    /**
+     * Constructor for a bot searching on the common ForkJoinPool.
+     * @param depth number of moves to look ahead, at least 1
+     * @param samples draws of new Gems averaged per move, at least 1
+     * @param budgetMillis time allowed per move before deeper levels are abandoned
+     */
+    public GemBot(int depth, int samples, long budgetMillis){
+        this(depth, samples, budgetMillis, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructor for a bot searching on a given pool.
+     * @param depth number of moves to look ahead, at least 1
+     * @param samples draws of new Gems averaged per move, at least 1
+     * @param budgetMillis time allowed per move before deeper levels are abandoned
+     * @param pool pool running the search tasks
+     */
+    public GemBot(int depth, int samples, long budgetMillis, ForkJoinPool pool){
+        if(depth < 1 || samples < 1){
+            throw new IllegalArgumentException("Depth and samples must be at least 1");
+        }
+        this.depth = depth;
+        this.samples = samples;
+        this.budgetNanos = budgetMillis * 1000000L;
+        this.pool = pool;
+    }
+
+    /**
+     * Get method for the depth reached by the last search.
+     * @return number of levels searched completely
+     */
+    public int getLastDepth(){
+        return lastDepth;
+    }
+
+    /**
+     * Get method for the value of the last chosen move.
+     * @return expected score of the move and the best moves after it
+     */
+    public double getLastValue(){
+        return lastValue;
+    }
+
+    /**
+     * Chooses the matching swap with the highest expected value.  The game itself is
+     * only read, so it must not change until the search returns.
+     * @param game settled board to move on
+     * @param rand random source for the sampled new Gems
+     * @return encoded move, or Move.NONE if no swap makes a match
+     */
+    public int chooseMove(GemManager game, Random rand){
+        long deadline = System.nanoTime() + budgetNanos;
+        long seed = rand.nextLong();
+        int[] candidates = new int[game.getNumRows() * game.getNumCols() * 2];
+        int count = legalMoves(game, candidates);
+        int best = Move.NONE;
+        double[] values = new double[count];
+
+        lastDepth = 0;
+        lastValue = 0;
+        if(count == 0){
+            return Move.NONE;
+        }
+        candidates = Arrays.copyOf(candidates, count);
+        for(int d = 1; d <= depth; d++){
+            Search search = new Search(game, candidates, values, d, seed, d == 1 ? Long.MAX_VALUE : deadline);
+
+            pool.invoke(search);
+            if(search.expired){
+                break;
+            }
+            best = candidates[0];
+            lastValue = values[0];
+            for(int m = 1; m < count; m++){
+                if(values[m] > lastValue){
+                    best = candidates[m];
+                    lastValue = values[m];
+                }
+            }
+            lastDepth = d;
+        }
+        return best;
+    }
+
+    /**
+     * Lists the swaps that make a match.
+     * @param game board to look at
+     * @param moves array filled with encoded moves
+     * @return number of moves found
+     */
+    static int legalMoves(GemManager game, int[] moves){
+        int rows = game.getNumRows(), cols = game.getNumCols();
+        int count = 0;
+
+        for(int y = 0; y < rows; y++){
+            for(int x = 0; x < cols; x++){
+                if(x + 1 < cols && game.isMatchingSwap(x, y, x + 1, y)){
+                    moves[count++] = Move.of(x, y, false, cols);
+                }
+                if(y + 1 < rows && game.isMatchingSwap(x, y, x, y + 1)){
+                    moves[count++] = Move.of(x, y, true, cols);
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * One level of the search: forks a task per candidate move and waits for all of them.
+     */
+    private class Search extends RecursiveAction{
+        private static final long serialVersionUID = 1L;
+        private GemManager game;
+        private int[] candidates;
+        private double[] values;
+        private int levels;
+        private long seed, deadline;
+        private volatile boolean expired; // Set by any task that ran out of time
+
+        /**
+         * Constructor for a search of a settled board.
+         * @param game board to search from
+         * @param candidates matching swaps on the board
+         * @param values array to fill with the value of each candidate
+         * @param levels number of moves to look ahead
+         * @param seed seed the sampled new Gems are derived from
+         * @param deadline System.nanoTime after which the search gives up
+         */
+        public Search(GemManager game, int[] candidates, double[] values, int levels, long seed, long deadline){
+            this.game = game;
+            this.candidates = candidates;
+            this.values = values;
+            this.levels = levels;
+            this.seed = seed;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Evaluates every candidate in its own task.
+         */
+        protected void compute(){
+            List<Evaluate> tasks = new ArrayList<Evaluate>(candidates.length);
+
+            for(int m = 0; m < candidates.length; m++){
+                tasks.add(new Evaluate(this, m));
+            }
+            invokeAll(tasks);
+        }
+    }
+
+    /**
+     * Plays out one candidate move of a search to the search's depth.
+     */
+    private class Evaluate extends RecursiveAction{
+        private static final long serialVersionUID = 1L;
+        private Search search;
+        private int index;
+        private GemManager[] boards; // Scratch board per level
+        private int[][] moves; // Scratch move list per level
+
+        /**
+         * Constructor for the task of one candidate.
+         * @param search search the candidate belongs to
+         * @param index index of the candidate in the search
+         */
+        public Evaluate(Search search, int index){
+            this.search = search;
+            this.index = index;
+        }
+
+        /**
+         * Stores the value of the candidate in the search's values.
+         */
+        protected void compute(){
+            GemManager game = search.game;
+            int n = game.getNumRows() * game.getNumCols() * 2;
+
+            boards = new GemManager[search.levels];
+            moves = new int[search.levels][];
+            for(int level = 0; level < search.levels; level++){
+                boards[level] = new GemManager(game, 0);
+                moves[level] = level > 0 ? new int[n] : null;
+            }
+            search.values[index] = value(0, game, search.candidates[index], search.seed);
+        }
+
+        /**
+         * Expected value of a move: the mean over the samples of its cascade score and
+         * the value of the best move after it.
+         * @param level number of moves already played before this one
+         * @param parent board the move is played on
+         * @param move encoded move
+         * @param seed seed the samples of this move are derived from
+         * @return expected value, or 0 once the search has run out of time
+         */
+        private double value(int level, GemManager parent, int move, long seed){
+            GemManager board = boards[level];
+            double total = 0, best, v;
+            int count;
+
+            for(int s = 0; s < samples; s++){
+                if(search.expired || System.nanoTime() > search.deadline){
+                    search.expired = true;
+                    return 0;
+                }
+                board.copyFrom(parent);
+                board.setSeed(GemRandom.mix(seed + s * 0x9E3779B97F4A7C15L + move));
+                board.swapGems(move);
+                total += board.cascade();
+                if(level + 1 < search.levels){
+                    count = legalMoves(board, moves[level + 1]);
+                    best = 0;
+                    for(int m = 0; m < count; m++){
+                        v = value(level + 1, board, moves[level + 1][m], GemRandom.mix(seed + s + level));
+                        best = Math.max(best, v);
+                    }
+                    total += best;
+                }
+            }
+            return total / samples;
+        }
+    }
+}
@@ -0,0 +1,359 @@
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class runs the game on its own thread, so settling a large board or thinking
+ * for auto-play never stalls the Event Dispatch Thread.  The engine thread is the only
+ * one that touches its GemManager, MoveFinder and ReplayRecorder.  Other threads hand
+ * it commands through a lock-free queue, and after each command it publishes an
+ * immutable BoardFrame through a volatile reference and calls the listener, which the
+ * GUI uses to schedule a repaint.  Only the newest frame is kept; a reader that falls
+ * behind skips frames rather than queueing them.
+ *
+ * Frames share the board tiles a command left unchanged with the frame before, so a
+ * move on a large board publishes in time proportional to the cells it touched.
+ *
+ * With -Dgem.metrics=true the queue depth at each submission and the latency of each
+ * command that publishes a frame, from submission until the frame is published, are
+ * recorded in GemMetrics.  Ignored swaps, hints and bot moves, pauses and saves publish
+ * nothing and are not timed.
+ */
+public class GemEngine implements Runnable{
+    // Instance Variables
+    public static final int START = 0, SWAP = 1, HINT = 2, AUTO = 3, PAUSE = 4, RESUME = 5, SAVE = 6;
+    private static final int CHECKPOINT_EVERY = 10; // Moves between score checkpoints in the replay log
+    private static final long SEED = 16;
+    private static final int BOT_CELLS = 64 * 64; // Larger boards auto-play random legal moves
+
+    private final ConcurrentLinkedQueue<Command> queue = new ConcurrentLinkedQueue<Command>();
+    private final Thread thread;
+    private final Runnable listener;
+    private volatile BoardFrame frame;
+
+    private final AtomicInteger depth = new AtomicInteger(); // Queued commands, counted only with metrics on
+
+    // Owned by the engine thread
+    private GemManager game;
+    private ReplayRecorder recorder;
+    private MoveFinder moves;
+    private GemBot bot = new GemBot(2, 4, 300); // Looks two moves ahead for auto-play
+    private Random rand = new Random();
+    private int score;
+    private boolean paused, reshuffled;
+    private long seq;
+    private byte[][] tiles; // Tiles of the last published frame, see BoardFrame
+    private CellSet dirtyTiles; // Tiles changed since the last published frame
+
+    /**
+     * Constructor that starts the engine thread.  The thread is a daemon, so it does not
+     * keep the program alive.
+     * @param listener called on the engine thread after every published frame, or null
+     */
+    public GemEngine(Runnable listener){
+        this.listener = listener;
+        thread = new Thread(this, "gem engine");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Queues a new game.  The new board is settled on the engine thread.
+     * @param rows number of rows for board
+     * @param cols number of columns for board
+     * @param symb number of symbols to be used for gems
+     */
+    public void start(int rows, int cols, int symb){
+        submit(START, rows, cols, symb, 0);
+    }
+
+    /**
+     * Queues a swap.  It is played if it makes a match on the board as it is when the
+     * engine gets to it, and ignored otherwise.
+     * @param x1 x coordinate of first Gem
+     * @param y1 y coordinate of first Gem
+     * @param x2 x coordinate of second Gem
+     * @param y2 y coordinate of second Gem
+     */
+    public void swap(int x1, int y1, int x2, int y2){
+        submit(SWAP, x1, y1, x2, y2);
+    }
+
+    /**
+     * Queues a request for a hint, published as the frame's hint.
+     */
+    public void hint(){
+        submit(HINT, 0, 0, 0, 0);
+    }
+
+    /**
+     * Queues a move chosen by the bot.  A frame is published even if no move is played.
+     */
+    public void autoMove(){
+        submit(AUTO, 0, 0, 0, 0);
+    }
+
+    /**
+     * Queues pausing or resuming the game.  While paused the engine ignores swaps,
+     * hints and bot moves.
+     * @param pause true to pause, false to resume
+     */
+    public void pause(boolean pause){
+        submit(pause ? PAUSE : RESUME, 0, 0, 0, 0);
+    }
+
+    /**
+     * Queues appending the finished game's replay log to the archive named by the
+     * gem.archive system property, if it is set.
+     */
+    public void saveReplay(){
+        submit(SAVE, 0, 0, 0, 0);
+    }
+
+    /**
+     * Get method for the newest frame.  Safe to call from any thread.
+     * @return newest frame, or null before the first game starts
+     */
+    public BoardFrame getFrame(){
+        return frame;
+    }
+
+    /**
+     * Adds a command to the queue and wakes the engine thread.
+     * @param kind command
+     * @param a first argument
+     * @param b second argument
+     * @param c third argument
+     * @param d fourth argument
+     */
+    private void submit(int kind, int a, int b, int c, int d){
+        queue.offer(new Command(kind, a, b, c, d));
+        if(GemMetrics.ENABLED){
+            GemMetrics.QUEUE_DEPTH.record(depth.incrementAndGet());
+        }
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Engine loop: runs queued commands in order, parking while the queue is empty.
+     */
+    public void run(){
+        Command command;
+        boolean published;
+
+        while(true){
+            command = queue.poll();
+            if(command == null){
+                LockSupport.park(this);
+                continue;
+            }
+            if(GemMetrics.ENABLED){
+                depth.decrementAndGet();
+            }
+            try{
+                published = execute(command);
+            } catch(RuntimeException ex){
+                System.err.println("Engine command " + command.kind + " failed: " + ex);
+                published = false;
+            }
+            if(GemMetrics.ENABLED && published){
+                GemMetrics.COMMAND_LATENCY.record(System.nanoTime() - command.submitted);
+            }
+        }
+    }
+
+    /**
+     * Runs one command on the engine thread and publishes its frame.
+     * @param command command to run
+     * @return true if a frame was published, false if the command was ignored or
+     *         publishes nothing
+     */
+    private boolean execute(Command command){
+        CascadeEvents events = null;
+        int move = Move.NONE, hint = Move.NONE;
+
+        switch(command.kind){
+            case START:
+                newGame(command.a, command.b, command.c);
+                break;
+            case SWAP:
+                if(game == null || paused || !game.isInBoard(command.a, command.b) || !game.isInBoard(command.c, command.d)
+                   || !moves.isLegal(command.a, command.b, command.c, command.d)){
+                    return false;
+                }
+                move = Move.encode(command.a, command.b, command.c, command.d, game.getNumCols());
+                break;
+            case HINT:
+                if(game == null || paused){
+                    return false;
+                }
+                hint = moves.hint();
+                break;
+            case AUTO:
+                if(game == null || paused){
+                    return false;
+                }
+                if(game.getNumRows() * game.getNumCols() <= BOT_CELLS){
+                    move = bot.chooseMove(game, rand);
+                } else {
+                    move = moves.randomMove(rand); // The bot copies the board per candidate move
+                }
+                break;
+            case PAUSE:
+            case RESUME:
+                paused = command.kind == PAUSE;
+                return false;
+            case SAVE:
+                save();
+                return false;
+            default:
+                throw new IllegalArgumentException("Unknown command " + command.kind);
+        }
+        if(move != Move.NONE){
+            events = play(move);
+        }
+        publish(command.kind, hint, events);
+        return true;
+    }
+
+    /**
+     * Creates a new recorded game.  Its board is dealt stable, so the settling loop only
+     * runs for boards of fewer than 3 symbols, which cannot be dealt without matches.
+     * @param rows number of rows for board
+     * @param cols number of columns for board
+     * @param symb number of symbols to be used for gems
+     */
+    private void newGame(int rows, int cols, int symb){
+        recorder = new ReplayRecorder(rows, cols, symb, SEED, true, CHECKPOINT_EVERY);
+        game = recorder.getGame();
+        score = 0;
+        paused = false;
+
+        while(game.checkBoard() > 0){
+            game.changeType();
+            game.shiftGems();
+        }
+        moves = new MoveFinder(game);
+        if(!moves.hasMoves()){
+            moves.reshuffle();
+        }
+        tiles = new byte[BoardFrame.tileColumns(cols) * BoardFrame.tileColumns(rows)][];
+        dirtyTiles = new CellSet(tiles.length);
+        dirtyTiles.addRange(0, tiles.length - 1);
+    }
+
+    /**
+     * Plays a legal move and resolves its whole cascade, reshuffling a dead board.  The
+     * tiles holding the cells the move changed are marked for copying.
+     * @param move encoded move
+     * @return events of the move
+     */
+    private CascadeEvents play(int move){
+        CascadeEvents events = new CascadeEvents();
+        int numCols = game.getNumCols();
+
+        score += game.resolve(move, events);
+        if(GemMetrics.ENABLED){
+            GemMetrics.CASCADE_DEPTH.record(game.getCascadeDepth());
+        }
+
+        // Every removed cell is refilled by a fall or a new Gem, so destinations cover all changes
+        for(int e = 0; e < events.size(); e++){
+            if(events.kind(e) != CascadeEvents.VANISH){
+                dirtyTiles.add(BoardFrame.tileIndex(events.x2(e), events.y2(e), numCols));
+            }
+            if(events.kind(e) == CascadeEvents.SWAP){
+                dirtyTiles.add(BoardFrame.tileIndex(events.x1(e), events.y1(e), numCols));
+            }
+        }
+        moves.update();
+        reshuffled = !moves.hasMoves();
+        if(reshuffled){
+            moves.reshuffle();
+            dirtyTiles.addRange(0, tiles.length - 1);
+        }
+        return events;
+    }
+
+    /**
+     * Publishes a frame of the current board and tells the listener.  Changed tiles are
+     * copied into new arrays; the frame before keeps the old ones.
+     * @param command command that made the frame
+     * @param hint move to highlight, or Move.NONE
+     * @param events events of the move played, or null
+     */
+    private void publish(int command, int hint, CascadeEvents events){
+        for(int t = dirtyTiles.nextSetBit(0); t >= 0; t = dirtyTiles.nextSetBit(t + 1)){
+            tiles[t] = copyTile(t);
+        }
+        dirtyTiles.clear();
+        frame = new BoardFrame(++seq, command, game.getNumRows(), game.getNumCols(), tiles.clone(),
+                               score, hint, events, events != null && reshuffled);
+        if(listener != null){
+            listener.run();
+        }
+    }
+
+    /**
+     * Copies one tile of the board into a new array, a row at a time.
+     * @param t row-major tile index
+     * @return TILE x TILE types, with cells past the board's edge left 0
+     */
+    private byte[] copyTile(int t){
+        int numRows = game.getNumRows(), numCols = game.getNumCols();
+        int tileCols = BoardFrame.tileColumns(numCols);
+        int x0 = t % tileCols * BoardFrame.TILE, y0 = t / tileCols * BoardFrame.TILE;
+        int width = Math.min(BoardFrame.TILE, numCols - x0);
+        byte[] tile = new byte[BoardFrame.TILE * BoardFrame.TILE];
+
+        for(int y = y0; y < Math.min(y0 + BoardFrame.TILE, numRows); y++){
+            game.copyCells(y * numCols + x0, tile, (y - y0) * BoardFrame.TILE, width);
+        }
+        return tile;
+    }
+
+    /**
+     * Appends the game's replay log to the archive named by gem.archive.
+     */
+    private void save(){
+        String archive = System.getProperty("gem.archive");
+
+        if(archive == null || recorder == null){
+            return;
+        }
+        try(ReplayArchive out = new ReplayArchive(Paths.get(archive))){
+            out.append(recorder.finish());
+        } catch(IOException ex){
+            System.err.println("Could not save replay: " + ex.getMessage());
+        }
+        recorder = null;
+    }
+
+    /**
+     * One queued command with up to four int arguments.
+     */
+    private static class Command{
+        // Instance Variables
+        private final int kind, a, b, c, d;
+        private final long submitted = GemMetrics.ENABLED ? System.nanoTime() : 0;
+
+        /**
+         * Constructor for a command.
+         * @param kind command
+         * @param a first argument
+         * @param b second argument
+         * @param c third argument
+         * @param d fourth argument
+         */
+        private Command(int kind, int a, int b, int c, int d){
+            this.kind = kind;
+            this.a = a;
+            this.b = b;
+            this.c = c;
+            this.d = d;
+        }
+    }
+}
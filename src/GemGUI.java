@@ -5,25 +5,42 @@ import java.awt.event.MouseAdapter;
 import java.awt.image.*;
 
 /**
- * This class displays and controls the GUI for a simple Gem Matching Game.
+ * This class displays and controls the GUI for a simple Gem Matching Game.  The game
+ * itself runs on a GemEngine thread: the GUI only sends it commands and draws the
+ * BoardFrames it publishes, so nothing on the Event Dispatch Thread waits for the board
+ * to settle.  Every game is recorded, and when the system property gem.archive names a
+ * ReplayArchive, the log of each finished game is appended to it.  With
+ * -Dgem.metrics=true paint times, cells painted and the lag of both timers are recorded
+ * in GemMetrics, next to the engine's cascade timings, queue depth and latency.
+ *
+ * A move is resolved completely by the engine, recording CascadeEvents, and the board
+ * then plays those events back as an animation on a frame timer.  The player can make
+ * the next move while the last one is still animating; it jumps to its end.
+ *
+ * Boards of any size are shown in a scrolling viewport, and only the visible cells are
+ * painted.  The cell size can be zoomed from 4 to 150 pixels.
  */
 public class GemGUI extends JFrame{
     // Instance Variables
-    private static final int RECT_SIZE = 75;
-    private static final int OVAL_SIZE = 71;
-    private static final int MAX_BOARD_SIZE = 12;
+    private static final int RECT_SIZE = 75; // Cell size in pixels before zooming
+    private static final int VIEW_SIZE = 12 * RECT_SIZE; // Width and height of the viewport
+    private static final int[] ZOOM_SIZES = {4, 8, 15, 25, 40, 60, 75, 100, 150}; // Cell sizes to zoom through
     
-    private int numRows, numCols, stage, totalScore;
-    private boolean isVisible,isImages;
+    private int numRows, numCols, stage, totalScore, hint;
+    private boolean isVisible,autoPlay;
     
-    private GemManager game;
+    private GemEngine engine;
+    private BoardFrame shown; // Frame on screen, or at the end of the running animation
+    private CascadeAnimation anim; // Animation of the shown board, null before the first game
     private GameBoard board;
-    private BufferedImage[] images;
+    private String theme = "circles"; // Name of the selected Gem images
     
     // Array of Colors provides reference for type integer when called to paint.
     private Color colors[] = {Color.WHITE,Color.BLUE,Color.GREEN,Color.RED,Color.YELLOW,Color.BLACK,Color.CYAN,Color.MAGENTA,Color.PINK};
-    // Invoke ImageArrays to get file loading out of the way.
+    // Sprites are decoded in the background from the constructor, and sliced per theme on first use.
     private ImageArrays array = new ImageArrays("sprite_sheet.jpg");
+    // Every type of the selected theme pre-rendered at cell size.
+    private TileCache tileCache = new TileCache(array, colors);
     
     /**
      * Constructor for GemGUI, builds the playing area and information panel in a BorderLayout. 
@@ -33,12 +50,28 @@ public class GemGUI extends JFrame{
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         setResizable(false);
         
+        array.preload(); // Decode while the player is choosing the board
         isVisible = false; // Do not paint board until start button is clicked.
         stage = -1; // board not clickable until start.
+        hint = Move.NONE;
         board = new GameBoard();
+        // The engine calls this on its own thread; the frame is read on the EDT.
+        engine = new GemEngine(new Runnable(){
+            public void run(){
+                SwingUtilities.invokeLater(new Runnable(){
+                    public void run(){
+                        board.showFrame();
+                    }
+                });
+            }
+        });
         JPanel panel = new JPanel(new BorderLayout(0,30));
+        JScrollPane scroll = new JScrollPane(board);
         
-        panel.add(board, BorderLayout.CENTER);
+        scroll.setPreferredSize(new Dimension(VIEW_SIZE, VIEW_SIZE));
+        scroll.setBorder(BorderFactory.createLineBorder(Color.black));
+        scroll.getViewport().setBackground(Color.WHITE);
+        panel.add(scroll, BorderLayout.CENTER);
         panel.add(new InfoPanel(), BorderLayout.LINE_END);
         
         setContentPane(panel);
@@ -46,32 +79,24 @@ public class GemGUI extends JFrame{
     }
     
     /**
-     * Constructs a new board with given parameters.  Defaults score to zero.  
+     * Asks the engine for a new board with given parameters.  Defaults score to zero.
+     * The board is shown when its frame arrives.
      * @param row number of rows for board
      * @param col number of columns for board
      * @param symb number of symbols to be used for gems
      */
     public void buildBoard(int row, int col, int symb){
-        game = new GemManager(row,col,symb,16);
         totalScore = 0;
-        
-        runGame();
+        hint = Move.NONE;
+        engine.start(row,col,symb);
     }
     
     /**
-     * Changes type of Gems and removes and shifts them in the board while there are Gems to be removed
+     * Asks the engine to append the finished game's replay log to the archive named by
+     * the gem.archive system property, if it is set.
      */
-    public void runGame(){
-        int numToRemove = 0;
-        
-        while(true){
-            numToRemove = game.checkBoard();
-            if(numToRemove == 0){
-                break;
-            }
-            game.changeType();
-            game.shiftGems();
-        }
+    public void saveReplay(){
+        engine.saveReplay();
     }
     
     /**
@@ -79,16 +104,20 @@ public class GemGUI extends JFrame{
      */
     public class GameBoard extends JPanel implements ActionListener{
         // Instance Variables
-        private int mx1,mx2,my1,my2,x1,y1,x2,y2,multiplier;
-        private Timer timer = new Timer(1000,this);
+        private static final int FRAME_MS = 16; // About 60 frames per second
+        
+        private int mx1,mx2,my1,my2,x1,y1,x2,y2;
+        private int cellSize = RECT_SIZE; // Zoomed width and height of a cell in pixels
+        private boolean pendingSync; // The running animation ends before a reshuffle
+        private long lastTick; // System.nanoTime of the last frame tick, 0 while stopped
+        private Timer timer = new Timer(FRAME_MS,this);
         
         /**
          * Constructor for GameBoard.  Instantiates all x and y coordinates and holders to -1 so they are not represented
-         * on the board initially.  Sets timer delay for animations, board size, color and adds a mouseListener for the entire panel.
+         * on the board initially.  Sets timer delay for animation frames, board size, color and adds a mouseListener for the entire panel.
          */
         public GameBoard(){
-            setBorder(BorderFactory.createLineBorder(Color.black));
-            setPreferredSize(new Dimension(MAX_BOARD_SIZE * RECT_SIZE, MAX_BOARD_SIZE * RECT_SIZE));
+            setPreferredSize(new Dimension(VIEW_SIZE, VIEW_SIZE));
             setBackground(Color.WHITE);
             setOpaque(true);
             
@@ -104,21 +133,24 @@ public class GemGUI extends JFrame{
         }
         
         /**
-         * this method takes in mouse clicks and determines if there is a valid swap.  
-         * Once that valid swap is found it activates the timer and advances the stage.
+         * this method takes in mouse clicks and determines if there is a swap of adjacent
+         * Gems.  The swap is sent to the engine, which plays it if it makes a match and
+         * ignores it otherwise; either way the selection is cleared.  A click during an
+         * animation first jumps it to its end.
          * @param me mouse click.
          */
         public void clickAction(MouseEvent me){
-            if(stage == 0){
+            if(stage == 0 && anim != null){
+                finishAnimation(); // Clicks act on the board as it really is
                 // First click
                 if(mx1 == -1 && my1 == -1){
                     mx1 = me.getX();
                     my1 = me.getY();
-                    x1 = mx1/RECT_SIZE;
-                    y1 = my1/RECT_SIZE;
+                    x1 = mx1/cellSize;
+                    y1 = my1/cellSize;
                     
                     if(x1 < numCols && y1 < numRows){
-                        repaint();
+                        repaintCell(x1, y1);
                     } else {
                         mx1 = my1 = -1;
                         x1 = y1 = -1;
@@ -128,8 +160,8 @@ public class GemGUI extends JFrame{
                 else {
                     mx2 = me.getX();
                     my2 = me.getY();
-                    x2 = mx2/RECT_SIZE;
-                    y2 = my2/RECT_SIZE;
+                    x2 = mx2/cellSize;
+                    y2 = my2/cellSize;
                     // Check if in bounds
                     if(x2 >= numCols || y2 >= numRows){
                         mx2 = my2 = -1;
@@ -137,98 +169,297 @@ public class GemGUI extends JFrame{
                     }
                     // Same square deselection
                     else if(x1 == x2 && y1 == y2){
+                        repaintCell(x1, y1);
                         mx1 = my1 = mx2 = my2 = -1;
                         x1 = y1 = x2 = y2 = -1;
-                        repaint();
                     }
-                    // Adjacent square swap 
+                    // Adjacent square swap, played by the engine if it makes a match
                     else if(x1 == x2 && Math.abs(y1 - y2) == 1 || 
                             y1 == y2 && Math.abs(x1 - x2) == 1){
-                        stage = 1;
-                        timer.start();
+                        engine.swap(x1,y1,x2,y2);
+                        repaintCell(x1, y1);
+                        mx1 = my1 = mx2 = my2 = -1;
+                        x1 = y1 = x2 = y2 = -1;
                     }
                     // Non-adajacent square new selection
                     else {
+                        repaintCell(x1, y1);
+                        repaintCell(x2, y2);
                         mx1 = mx2;
                         my1 = my2;
                         x1 = x2;
                         y1 = y2;
                         mx2 = my2 = x2 = y2 = -1;
-                        repaint();
                     }
                 }
             }
         }
         
         /**
-         * This method uses the ticks of the timer to repaint a simple animation of the board
-         * once a valid swap has been found. It first swaps the gem types and repaints. Then
-         * any 3+ matches that exists are flagged for removal and animated to match the background and
-         * thus "disappear." Finally, it shifts the gems down the board and fills the new empty spaces with
-         * random gem types
+         * While auto-play is on and the board is waiting for a move, asks the engine for a
+         * bot move.  The board ignores clicks while the bot thinks (stage 4), until the
+         * frame of the bot's move arrives.
+         */
+        public void autoMove(){
+            if(!autoPlay || stage != 0 || anim == null || anim.isRunning()){
+                return;
+            }
+            stage = 4;
+            engine.autoMove();
+        }
+        
+        /**
+         * Shows the newest frame published by the engine.  A new game or a frame that
+         * follows one that was missed is shown as it is; a move following the shown frame
+         * is animated from the shown board.  Called on the EDT after every frame.
+         */
+        public void showFrame(){
+            BoardFrame frame = engine.getFrame();
+            boolean next;
+            
+            if(frame == null || frame == shown){
+                return;
+            }
+            next = shown != null && frame.getSeq() == shown.getSeq() + 1;
+            if(frame.getCommand() == GemEngine.START || anim == null
+               || anim.getNumRows() != frame.getNumRows() || anim.getNumCols() != frame.getNumCols()){
+                numRows = frame.getNumRows();
+                numCols = frame.getNumCols();
+                anim = new CascadeAnimation(numRows, numCols);
+                anim.sync(frame);
+                pendingSync = false;
+                timer.stop();
+                lastTick = 0;
+                resizeBoard();
+                repaint();
+            } else if(next && frame.getEvents() != null){
+                finishAnimation();
+                anim.start(frame.getEvents(), System.nanoTime());
+                pendingSync = frame.isReshuffled();
+                repaintArea();
+                timer.start();
+            } else if(!next){
+                anim.sync(frame);
+                pendingSync = false;
+                repaint();
+            }
+            repaintMove(hint);
+            hint = frame.getHint();
+            repaintMove(hint);
+            totalScore = frame.getScore();
+            shown = frame;
+            
+            if(frame.getCommand() == GemEngine.AUTO && stage == 4){
+                stage = 0; // Auto-play goes on when the animation ends
+            }
+            if(frame.getCommand() == GemEngine.START){
+                autoMove();
+            }
+        }
+        
+        /**
+         * Jumps to the end of the running animation.  If the move ended in a reshuffle,
+         * the shown frame's board differs from the animated one and is shown instead.
+         */
+        public void finishAnimation(){
+            repaintArea();
+            anim.finish();
+            if(pendingSync){
+                anim.sync(shown);
+                pendingSync = false;
+                repaint();
+            }
+        }
+        
+        /**
+         * Sizes the board to its cells at the current zoom, so the viewport scrolls over it.
+         */
+        public void resizeBoard(){
+            setPreferredSize(new Dimension(Math.max(numCols * cellSize, 1), Math.max(numRows * cellSize, 1)));
+            revalidate();
+        }
+        
+        /**
+         * Zooms to the next cell size in or out, keeping the cell at the center of the
+         * viewport in place.
+         * @param in true to make cells larger, false to make them smaller
+         */
+        public void zoom(boolean in){
+            JViewport view = (JViewport) SwingUtilities.getAncestorOfClass(JViewport.class, this);
+            Rectangle visible = getVisibleRect();
+            double cx = visible.getCenterX() / cellSize, cy = visible.getCenterY() / cellSize;
+            int i = 0;
+            
+            while(i < ZOOM_SIZES.length - 1 && ZOOM_SIZES[i] < cellSize){
+                i++;
+            }
+            i = Math.max(Math.min(in ? i + 1 : i - 1, ZOOM_SIZES.length - 1), 0);
+            cellSize = ZOOM_SIZES[i];
+            resizeBoard();
+            if(view != null){
+                Dimension extent = view.getExtentSize();
+                JScrollPane scroll = (JScrollPane) view.getParent();
+                
+                setSize(getPreferredSize()); // Lay out now so the new position is in range
+                view.setViewPosition(new Point(
+                    (int) Math.max(Math.min(cx * cellSize - extent.width / 2, getWidth() - extent.width), 0),
+                    (int) Math.max(Math.min(cy * cellSize - extent.height / 2, getHeight() - extent.height), 0)));
+                scroll.getHorizontalScrollBar().setUnitIncrement(cellSize);
+                scroll.getVerticalScrollBar().setUnitIncrement(cellSize);
+            }
+            repaint();
+        }
+        
+        /**
+         * Marks the cells touched by the current animation phase for repainting.
+         */
+        public void repaintArea(){
+            Rectangle area = anim.getArea();
+            
+            if(!area.isEmpty()){
+                repaint(area.x * cellSize, area.y * cellSize, area.width * cellSize + 1, area.height * cellSize + 1);
+            }
+        }
+        
+        /**
+         * Marks one cell for repainting, including the outline drawn on its edge.
+         * @param x x coordinate of the cell
+         * @param y y coordinate of the cell
+         */
+        public void repaintCell(int x, int y){
+            repaint(x * cellSize, y * cellSize, cellSize + 1, cellSize + 1);
+        }
+        
+        /**
+         * Marks both cells of a move for repainting.
+         * @param move encoded move, or Move.NONE for nothing
+         */
+        public void repaintMove(int move){
+            if(move != Move.NONE){
+                repaintCell(Move.x1(move, numCols), Move.y1(move, numCols));
+                repaintCell(Move.x2(move, numCols), Move.y2(move, numCols));
+            }
+        }
+        
+        /**
+         * This method uses the ticks of the timer to advance the animation of the last move
+         * and repaint the cells it touches.  When the animation ends the timer stops and
+         * auto-play is asked for the next move.
          * @param e each tick of the timer
          */    
         public void actionPerformed(ActionEvent e){
-            int numDel;
+            long now = System.nanoTime();
             
-            // 1: swapGems
-            if(stage == 1){ 
-                multiplier = 1;
-                game.swapGems(x1,y1,x2,y2);
-                mx1 = my1 = mx2 = my2 = -1;
-                x1 = y1 = x2 = y2 = -1;
-                repaint();
-                stage = 2;
+            if(GemMetrics.ENABLED){
+                GemMetrics.recordLag(GemMetrics.FRAME_TIMER_LAG, lastTick, now, FRAME_MS);
             }
-            // 2: checkBoard and changeType
-            else if(stage == 2){
-                numDel = game.checkBoard();
-                
-                if(numDel > 0){
-                    game.changeType();
-                    totalScore += game.getTurnScore() * multiplier;
-                    multiplier++;
-                    repaint();
-                    stage = 3;
-                } else {
-                    stage = 0;
-                    timer.stop();
+            lastTick = now;
+            repaintArea();
+            if(anim == null || !anim.advance(now)){
+                timer.stop();
+                lastTick = 0;
+                if(anim != null){
+                    finishAnimation();
+                    autoMove();
+                    repaintArea();
                 }
+                return;
             }
-            // 3: shiftGems
-            else if(stage == 3){
-                game.shiftGems();
-                repaint();
-                stage = 2;
-            }
+            repaintArea();
         }
         
         /**
          * This paints the board with the proper gem representations, but only when the game has
          * been initially started, or when it is not paused.  It also paints a highlighting square 
-         * around the initially selected gem for swaps
+         * around the initially selected gem for swaps.  Only cells inside the clip are drawn, so
+         * repainting a few changed cells costs a few cells.  With metrics on the time spent and
+         * the cells drawn are recorded.  Each
+         * cell is an unscaled copy of its pre-rendered tile.  The board drawn is the one the
+         * animation shows, and the Gems moving in the current phase are drawn on top.
          * @param g graphics to paint
          */        
         public void paintComponent(Graphics g){
+            long start = GemMetrics.ENABLED ? System.nanoTime() : 0;
+            Rectangle clip = g.getClipBounds();
+            int xMin = 0, yMin = 0, xMax = numCols - 1, yMax = numRows - 1;
+            
             super.paintComponent(g);
-            if(isVisible){
-                for(int y = 0; y < numRows; y++){    
-                    for(int x = 0; x < numCols; x++){
-                        if(!isImages){
-                            g.setColor(colors[game.getGem(x,y).getType()]);    
-                            g.fillOval(x * RECT_SIZE + (RECT_SIZE - OVAL_SIZE)/2,
-                                       y * RECT_SIZE + (RECT_SIZE - OVAL_SIZE)/2,
-                                       OVAL_SIZE, OVAL_SIZE);
-                        } else {
-                            g.drawImage(images[game.getGem(x,y).getType()],
-                                x * RECT_SIZE,y * RECT_SIZE,RECT_SIZE,RECT_SIZE,null);
-                        }
+            if(clip != null){
+                xMin = Math.max(clip.x / cellSize, 0);
+                yMin = Math.max(clip.y / cellSize, 0);
+                xMax = Math.min((clip.x + clip.width - 1) / cellSize, numCols - 1);
+                yMax = Math.min((clip.y + clip.height - 1) / cellSize, numRows - 1);
+            }
+            if(isVisible && anim != null){
+                Image[] tiles = tileCache.getTiles(theme, getGraphicsConfiguration(), cellSize);
+                
+                if(GemMetrics.ENABLED){
+                    GemMetrics.PAINT_CELLS.record(Math.max(xMax - xMin + 1, 0) * Math.max(yMax - yMin + 1, 0));
+                }
+                for(int y = yMin; y <= yMax; y++){    
+                    for(int x = xMin; x <= xMax; x++){
+                        g.drawImage(tiles[anim.isMoving(x,y) ? 0 : anim.getType(x,y)], x * cellSize, y * cellSize, null);
                     }
                 }
+                if(anim.isRunning()){
+                    paintMoving(g, tiles, xMin, yMin, xMax, yMax);
+                }
                 
                 if(x1 >= 0 && y1 >= 0){
                     g.setColor(Color.BLACK);
-                    g.drawRect(x1 * RECT_SIZE, y1 * RECT_SIZE, RECT_SIZE, RECT_SIZE);
+                    g.drawRect(x1 * cellSize, y1 * cellSize, cellSize, cellSize);
+                }
+                
+                if(hint != Move.NONE){
+                    g.setColor(Color.ORANGE);
+                    g.drawRect(Move.x1(hint, numCols) * cellSize, Move.y1(hint, numCols) * cellSize, cellSize, cellSize);
+                    g.drawRect(Move.x2(hint, numCols) * cellSize, Move.y2(hint, numCols) * cellSize, cellSize, cellSize);
+                }
+            }
+            if(GemMetrics.ENABLED){
+                GemMetrics.PAINT.record(System.nanoTime() - start);
+            }
+        }
+        
+        /**
+         * Draws the Gems of the current animation phase between their start and end: the
+         * swapped pair sliding past each other, removed Gems shrinking away, and falling
+         * and new Gems dropping with a quadratic ease-in.  Gems whose path misses the
+         * painted cells are skipped.
+         * @param g graphics to paint
+         * @param tiles tile of each type
+         * @param xMin first painted column
+         * @param yMin first painted row
+         * @param xMax last painted column
+         * @param yMax last painted row
+         */
+        public void paintMoving(Graphics g, Image[] tiles, int xMin, int yMin, int xMax, int yMax){
+            double f = anim.getProgress(System.nanoTime());
+            int kind, px, py, size;
+            CascadeEvents events = anim.getEvents();
+            
+            for(int e = anim.getFirstEvent(); e < anim.getEndEvent(); e++){
+                kind = events.kind(e);
+                if(Math.max(events.x1(e), events.x2(e)) < xMin || Math.min(events.x1(e), events.x2(e)) > xMax
+                   || Math.max(events.y1(e), events.y2(e)) < yMin || Math.min(events.y1(e), events.y2(e)) > yMax){
+                    continue;
+                }
+                if(kind == CascadeEvents.SWAP){
+                    px = (int) Math.round((events.x1(e) + (events.x2(e) - events.x1(e)) * f) * cellSize);
+                    py = (int) Math.round((events.y1(e) + (events.y2(e) - events.y1(e)) * f) * cellSize);
+                    g.drawImage(tiles[anim.getType(events.x1(e), events.y1(e))], px, py, null);
+                    px = (int) Math.round((events.x2(e) + (events.x1(e) - events.x2(e)) * f) * cellSize);
+                    py = (int) Math.round((events.y2(e) + (events.y1(e) - events.y2(e)) * f) * cellSize);
+                    g.drawImage(tiles[anim.getType(events.x2(e), events.y2(e))], px, py, null);
+                } else if(kind == CascadeEvents.VANISH){
+                    size = (int) Math.round(cellSize * (1 - f));
+                    px = events.x1(e) * cellSize + (cellSize - size) / 2;
+                    py = events.y1(e) * cellSize + (cellSize - size) / 2;
+                    g.drawImage(tiles[events.type(e)], px, py, size, size, null);
+                } else {
+                    px = events.x1(e) * cellSize;
+                    py = (int) Math.round((events.y1(e) + (events.y2(e) - events.y1(e)) * f * f) * cellSize);
+                    g.drawImage(tiles[events.type(e)], px, py, null);
                 }
             }
         }
@@ -241,6 +472,7 @@ public class GemGUI extends JFrame{
     public class InfoPanel extends JPanel implements ActionListener{
         // Instance Variables
         private int secs;
+        private long lastTick; // System.nanoTime of the last clock tick, 0 while stopped
         private boolean paused, isStarted;
         private SelectPanel selection;
         private Timer gameTimer;
@@ -249,6 +481,10 @@ public class GemGUI extends JFrame{
         private JLabel scoreBoard = new JLabel("<html><br>&nbsp Score: </html>");
         private JButton startButton = new JButton("Start Game");
         private JButton pauseButton = new JButton("Pause");
+        private JButton hintButton = new JButton("Hint");
+        private JButton autoButton = new JButton("Auto-play");
+        private JButton zoomInButton = new JButton("Zoom in");
+        private JButton zoomOutButton = new JButton("Zoom out");
         private JLabel time,score;
         
         
@@ -260,7 +496,7 @@ public class GemGUI extends JFrame{
         public InfoPanel(){
             setBorder(BorderFactory.createLineBorder(Color.black));
             setLayout(new BorderLayout());
-            setPreferredSize(new Dimension(250, MAX_BOARD_SIZE * RECT_SIZE));
+            setPreferredSize(new Dimension(250, VIEW_SIZE));
             
             secs = 100;
             paused = false;
@@ -268,7 +504,7 @@ public class GemGUI extends JFrame{
             
             selection = new SelectPanel();
             gameTimer = new Timer(750,this);
-            JPanel buttonPanel = new JPanel();
+            JPanel buttonPanel = new JPanel(new GridLayout(0, 2, 5, 5));
             
             countdown.setFont(new Font("Monospaced", Font.PLAIN, 20));
             scoreBoard.setFont(new Font("Monospaced", Font.PLAIN, 20));
@@ -291,6 +527,10 @@ public class GemGUI extends JFrame{
             
             buttonPanel.add(startButton);
             buttonPanel.add(pauseButton);
+            buttonPanel.add(hintButton);
+            buttonPanel.add(autoButton);
+            buttonPanel.add(zoomInButton);
+            buttonPanel.add(zoomOutButton);
             
             add(panel, BorderLayout.PAGE_START);
             add(buttonPanel, BorderLayout.PAGE_END);
@@ -309,13 +549,61 @@ public class GemGUI extends JFrame{
                     pauseGame();
                 }
             });
+            
+            // Anonymous class to listen for mouse clicks on the hint button.
+            hintButton.addMouseListener(new MouseAdapter(){
+                public void mouseClicked(MouseEvent me){
+                    showHint();
+                }
+            });
+            
+            // Anonymous class to listen for mouse clicks on the auto-play button.
+            autoButton.addMouseListener(new MouseAdapter(){
+                public void mouseClicked(MouseEvent me){
+                    toggleAuto();
+                }
+            });
+            
+            // Anonymous classes to listen for mouse clicks on the zoom buttons.
+            zoomInButton.addMouseListener(new MouseAdapter(){
+                public void mouseClicked(MouseEvent me){
+                    board.zoom(true);
+                }
+            });
+            zoomOutButton.addMouseListener(new MouseAdapter(){
+                public void mouseClicked(MouseEvent me){
+                    board.zoom(false);
+                }
+            });
+        }
+        
+        /**
+         * Turns auto-play on or off.  While it is on the bot makes every move.
+         */
+        public void toggleAuto(){
+            autoPlay = !autoPlay;
+            autoButton.setText(autoPlay ? "Stop" : "Auto-play");
+            board.autoMove();
+        }
+        
+        /**
+         * Highlights a swap that makes a match while the board is waiting for a move.
+         */
+        public void showHint(){
+            if(stage == 0){
+                engine.hint();
+            }
         }
         
         /**
          * Initializes GUI.  Allows board to be painted, starts the gameTimer,
          * activates mouseListener on the board and instantiates the parameters of the board.
+         * Nothing starts if the typed board size is not supported.
          */
         public void startGame(){
+            if(!selection.checkSizes()){
+                return;
+            }
             secs = 100;
             totalScore = 0;
             isVisible = true;
@@ -323,15 +611,7 @@ public class GemGUI extends JFrame{
             
             buildBoard(selection.getRows(),selection.getCols(),selection.getSymb());
             
-            if(!selection.getImg().equals("circles")){
-                images = array.getArray(selection.getImg());
-                isImages = true;
-            } else {
-                isImages = false;
-            }
-            
-            numRows = game.getNumRows();
-            numCols = game.getNumCols();
+            theme = selection.getImg();
             stage = 0;
             
             gameTimer.start();
@@ -346,19 +626,23 @@ public class GemGUI extends JFrame{
         public void pauseGame(){
             if(!paused && isStarted){
                 gameTimer.stop();
+                lastTick = 0;
                 pauseButton.setText("Continue");
                 paused = true;
                 isVisible = false;
                 stage = -1;
+                engine.pause(true);
                 board.repaint();
             } 
             else if(isStarted) {
+                engine.pause(false);
                 gameTimer.start();
                 pauseButton.setText("Pause");
                 paused = false;
                 isVisible = true;
                 stage = 0;
                 board.repaint();
+                board.autoMove();
             }
         }
         
@@ -368,6 +652,12 @@ public class GemGUI extends JFrame{
          * @param e each tick of the timer.
          */
         public void actionPerformed(ActionEvent e){
+            long now = System.nanoTime();
+            
+            if(GemMetrics.ENABLED){
+                GemMetrics.recordLag(GemMetrics.CLOCK_TIMER_LAG, lastTick, now, gameTimer.getDelay());
+            }
+            lastTick = now;
             if(secs >= 0){
                 countdown.setText("<html><br>&nbsp Time: </html>");
                 time.setText(" "+secs);
@@ -376,10 +666,11 @@ public class GemGUI extends JFrame{
             
             scoreBoard.setText("<html><br>&nbsp Score: </html>");
             score.setText(" "+totalScore+" ");
-            
-            if(secs < 0 && stage == 0){
+            if(secs < 0 && (stage == 0 || stage == 4)){
                 gameTimer.stop();
+                lastTick = 0;
                 secs = 100;
+                saveReplay();
                 JOptionPane.showMessageDialog(this, "Game Over!");
                 stage = -1;
             }
@@ -0,0 +1,263 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class is a load generator for GemServer.  It opens many sessions at once, each
+ * on its own thread from GemServer.newSessionExecutor, and every session starts a game
+ * and then plays moves as fast as the server answers, asking for a HINT and playing it
+ * with SWAP, until its moves are played or its board is dead.  The round trip of each
+ * SWAP is recorded in a LatencyHistogram, and the report gives the p50 and p99 move
+ * latency, the moves per second and the moves per second per core.
+ *
+ * With --idle the sessions only start their games and wait, and the server's heap use
+ * is read with STATS before and after, giving the memory held per idle session.
+ *
+ * Usage: java GemLoad [--port P] [--sessions N] [--moves M] [--rows R] [--cols C]
+ *                     [--symbols S] [--idle] [--embedded]
+ * With --embedded a GemServer is started in the same JVM on a free port, so the cores
+ * are shared between server and load.
+ */
+public class GemLoad{
+    public static void main(String[] args){
+        int port = GemServer.DEFAULT_PORT, sessions = 1000, moves = 100, rows = 8, cols = 8, symb = 6;
+        boolean idle = false, embedded = false;
+        GemServer server = null;
+
+        try{
+            for(int i = 0; i < args.length; i++){
+                String arg = args[i];
+
+                if(arg.equals("--idle")){
+                    idle = true;
+                    continue;
+                } else if(arg.equals("--embedded")){
+                    embedded = true;
+                    continue;
+                }
+                String value = args[++i];
+                if(arg.equals("--port")){
+                    port = Integer.parseInt(value);
+                } else if(arg.equals("--sessions")){
+                    sessions = Integer.parseInt(value);
+                } else if(arg.equals("--moves")){
+                    moves = Integer.parseInt(value);
+                } else if(arg.equals("--rows")){
+                    rows = Integer.parseInt(value);
+                } else if(arg.equals("--cols")){
+                    cols = Integer.parseInt(value);
+                } else if(arg.equals("--symbols")){
+                    symb = Integer.parseInt(value);
+                } else {
+                    throw new IllegalArgumentException("Unknown option: " + arg);
+                }
+            }
+        } catch(RuntimeException ex){
+            System.err.println(ex.getMessage());
+            System.err.println("Usage: java GemLoad [--port P] [--sessions N] [--moves M] [--rows R] [--cols C]"
+                + " [--symbols S] [--idle] [--embedded]");
+            System.exit(1);
+        }
+        try{
+            if(embedded){
+                final GemServer running = new GemServer(0, rows * cols);
+                Thread accept = new Thread(new Runnable(){
+                    public void run(){
+                        running.serve();
+                    }
+                }, "gem accept");
+
+                accept.setDaemon(true);
+                accept.start();
+                server = running;
+                port = running.getPort();
+            }
+            run(port, sessions, moves, rows, cols, symb, idle);
+        } catch(IOException | InterruptedException ex){
+            System.err.println("Load failed: " + ex);
+            System.exit(1);
+        } finally{
+            if(server != null){
+                server.close();
+            }
+        }
+    }
+
+    /**
+     * Runs the sessions and prints the report.
+     * @param port port of the server on the loopback interface
+     * @param sessions number of concurrent sessions
+     * @param moves moves played by each session
+     * @param rows num rows of each board
+     * @param cols num cols of each board
+     * @param symb num symbols of each board
+     * @param idle true to only start the games and measure the memory they hold
+     * @throws IOException if the server cannot be reached for STATS
+     * @throws InterruptedException if interrupted while waiting for the sessions
+     */
+    private static void run(final int port, int sessions, final int moves, final int rows, final int cols,
+                            final int symb, final boolean idle) throws IOException, InterruptedException{
+        final LatencyHistogram latency = new LatencyHistogram("move", true);
+        final CountDownLatch ready = new CountDownLatch(sessions), go = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(sessions), release = new CountDownLatch(1);
+        final AtomicInteger failed = new AtomicInteger();
+        ExecutorService threads = GemServer.newSessionExecutor("gem load");
+        int cores = Runtime.getRuntime().availableProcessors();
+        long[] before = stats(port), after;
+        long start, elapsed;
+
+        for(int s = 0; s < sessions; s++){
+            final int seed = s;
+
+            threads.execute(new Runnable(){
+                public void run(){
+                    try(Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)){
+                        socket.setTcpNoDelay(true);
+                        play(socket, seed, moves, rows, cols, symb, idle, latency, ready, go, release);
+                    } catch(IOException | InterruptedException | RuntimeException ex){
+                        if(failed.getAndIncrement() == 0){
+                            System.err.println("Session failed: " + ex);
+                        }
+                        ready.countDown();
+                    } finally{
+                        done.countDown();
+                    }
+                }
+            });
+        }
+        ready.await();
+        start = System.nanoTime();
+        go.countDown();
+        if(idle){
+            after = stats(port);
+            release.countDown();
+            done.await();
+            System.out.printf("idle sessions=%d open=%d heap %d KB -> %d KB, %.1f KB per session%n",
+                              sessions, after[0], before[2], after[2],
+                              (double) (after[2] - before[2]) / Math.max(sessions, 1));
+        } else {
+            done.await();
+            elapsed = System.nanoTime() - start;
+            System.out.printf("sessions=%d moves=%d failed=%d threads=%s cores=%d%n", sessions, latency.getCount(),
+                              failed.get(), GemServer.hasVirtualThreads() ? "virtual" : "platform", cores);
+            System.out.printf("move latency p50=%.1f us p99=%.1f us max=%.1f us%n",
+                              latency.getP50(), latency.getP99(), latency.getMax());
+            System.out.printf("%.0f moves/s, %.0f moves/s per core, %.0f sessions per core%n",
+                              latency.getCount() / (elapsed / 1e9), latency.getCount() / (elapsed / 1e9) / cores,
+                              (double) sessions / cores);
+        }
+        threads.shutdown();
+        threads.awaitTermination(1, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Plays one session: starts a game, waits for every session to be ready, then plays
+     * hinted moves, timing each SWAP, until the board has no hint.
+     * @param socket connection to the server
+     * @param seed seed of the session's board
+     * @param moves moves to play
+     * @param rows num rows of board
+     * @param cols num cols of board
+     * @param symb num symbols of board
+     * @param idle true to hold the game without playing until released
+     * @param latency histogram of SWAP round trips
+     * @param ready counted down once the game has started
+     * @param go released when every session is ready
+     * @param release released when idle sessions may quit
+     * @throws IOException if the connection fails
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private static void play(Socket socket, int seed, int moves, int rows, int cols, int symb, boolean idle,
+                             LatencyHistogram latency, CountDownLatch ready, CountDownLatch go,
+                             CountDownLatch release) throws IOException, InterruptedException{
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                                                                     StandardCharsets.US_ASCII), 512);
+        OutputStream out = socket.getOutputStream();
+        String reply;
+        long t0;
+
+        expect(request(in, out, "START " + rows + " " + cols + " " + symb + " " + seed), "STARTED");
+        ready.countDown();
+        go.await();
+        if(idle){
+            release.await();
+        } else {
+            for(int m = 0; m < moves; m++){
+                reply = expect(request(in, out, "HINT"), "HINT");
+                if(reply.equals("HINT NONE")){
+                    break;
+                }
+                t0 = System.nanoTime();
+                expect(request(in, out, "SWAP" + reply.substring(4)), "MOVED");
+                latency.record(System.nanoTime() - t0);
+            }
+        }
+        request(in, out, "QUIT");
+    }
+
+    /**
+     * Sends one request and reads its reply.
+     * @param in reader of the server's replies
+     * @param out stream to the server
+     * @param request request line
+     * @return reply line
+     * @throws IOException if the connection fails or closes
+     */
+    private static String request(BufferedReader in, OutputStream out, String request) throws IOException{
+        String reply;
+
+        out.write((request + "\n").getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+        reply = in.readLine();
+        if(reply == null){
+            throw new IOException("Server closed the connection");
+        }
+        return reply;
+    }
+
+    /**
+     * Checks the kind of a reply.
+     * @param reply reply line
+     * @param kind expected first word
+     * @return the reply
+     */
+    private static String expect(String reply, String kind){
+        if(!reply.startsWith(kind)){
+            throw new IllegalStateException("Expected " + kind + ", got " + reply);
+        }
+        return reply;
+    }
+
+    /**
+     * Asks the server for its statistics on a connection of its own.
+     * @param port port of the server
+     * @return open sessions, moves played and heap use in KB, after a GC request
+     * @throws IOException if the server cannot be reached
+     */
+    private static long[] stats(int port) throws IOException{
+        List<Long> values = new ArrayList<Long>();
+
+        System.gc(); // Only helps when the server is embedded
+        try(Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)){
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                                                                         StandardCharsets.US_ASCII));
+            String[] words = expect(request(in, socket.getOutputStream(), "STATS"), "STATS").split(" ");
+
+            for(int w = 1; w < words.length; w++){
+                values.add(Long.parseLong(words[w]));
+            }
+            request(in, socket.getOutputStream(), "QUIT");
+        }
+        return new long[]{values.get(0) - 1, values.get(1), values.get(2)}; // Not counting this connection
+    }
+}
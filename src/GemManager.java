@@ -1,5 +1,6 @@
 import java.util.*;
-import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * This class contains the bookkeeping for Gems in a simple Match 3 game.  It checks
@@ -12,18 +13,42 @@ import java.util.List;
 public class GemManager{
     
     //Instance Variables
-    private int numRows, numCols, numSymbols, turnScore;
+    private int numRows, numCols, numSymbols, turnScore, cascadeDepth;
     private int[] numDeleteCol;
-    private Gem[][] board; // 2D Array to represent board
-    private List<Gem> gemsToRemove; // Collection of Gems flagged for removal
-    private List<Gem> gemsToCheck; // Collection of Gems to check for matches after board shift
-    private Random rand; 
+    private int[] lowDeleteCol; // Lowest (largest y) row emptied per col
+    private CellSet deleteCols; // Columns with numDeleteCol > 0
+    private byte[] refill; // New types drawn ahead of a parallel shift, in column order
+    private int[] colRunStart, colRunEnd; // Last run walked in each column during a check
+    private long[] colRunPass; // checkBoard pass each column's last run was walked in
+    private long checkPass; // Number of checkBoard calls
+    private RunChecker checker; // Checks the whole board on the calling thread
+    private RunChecker[] stripeCheckers; // One per stripe of STRIPE_COLS columns, made on first use
+    private CheckStripe checkTask; // Task tree over stripeCheckers, reinitialized for each parallel check
+    private ShiftStripe shiftTask; // Task tree over the columns, reinitialized for each parallel shift
+    private ForkJoinPool pool = ForkJoinPool.commonPool(); // Runs large steps in stripes, or null
+    private MatchScanner scanner; // Finds the runs of full checks, made on first use
+    private ByteBoard board; // Packed row-major types, one byte per cell
+    private byte[] cells; // Backing array of board for index arithmetic
+    private CellSet gemsToRemove; // Cells flagged for removal
+    private CellSet gemsToCheck; // Cells to check after board shift, indexed column-major (x * numRows + y)
+    private boolean shifted; // gemsToCheck was filled by shiftGems rather than initBoard or swapGems
+    private boolean stable; // initBoard deals boards with no matches and a move instead of random ones
+    private CellSet changed; // Cells whose type changed since clearChangedCells, column-major
+    private GemRandom rand; // Same numbers as java.util.Random, with its state in one long
+    private ReplayRecorder recorder; // Told of every move, shuffle, refill and removal, or null
+    private CascadeEvents events; // Receives per-cell events for animation, or null
     private enum Direction{N, S, E, W};  // Used for match checking purposes
     
     /* Character representations for non-GUI game to correspond index to type.
        Used for testing purposes.*/
     private char[] charSymbol = {'_','*','#','&','o','x','$','+'}; 
     
+    private static final int MAX_DEALS = 100; // Stable boards dealt before keeping one with no moves
+    
+    // Steps checking or removing at least this many Gems run in parallel stripes of STRIPE_COLS columns.
+    private static final int PARALLEL_CELLS = 1 << 12;
+    private static final int STRIPE_COLS = 64;
+    
     /**
      * Constructor for testing because of inclusion of seed for random num generator
      * @param rows num rows for board
@@ -32,17 +57,64 @@ public class GemManager{
      * @param randSeed constant for random num generator
      */
     public GemManager(int rows, int cols, int symb, long randSeed){
+        this(rows, cols, symb, randSeed, false);
+    }
+    
+    /**
+     * Constructor that chooses how boards are filled.  A stable board is dealt in one
+     * pass with no matches and at least one move, so it needs no settling cascade; a
+     * random board usually holds matches and is settled by cascading it.
+     * @param rows num rows for board
+     * @param cols num cols for board
+     * @param symb num symbols to be used on board
+     * @param randSeed constant for random num generator
+     * @param stable true to deal stable boards, false for random ones
+     */
+    public GemManager(int rows, int cols, int symb, long randSeed, boolean stable){
+        this(rows, cols, symb, new GemRandom(randSeed));
+        this.stable = stable;
+        
+        initBoard();
+    }
+    
+    /**
+     * Constructor for a copy of another board, e.g. to play out a move without touching
+     * the original.  The copy draws its new Gems from its own seed.
+     * @param other board to copy
+     * @param randSeed constant for random num generator of the copy
+     */
+    public GemManager(GemManager other, long randSeed){
+        this(other.numRows, other.numCols, other.numSymbols, new GemRandom(randSeed));
+        
+        copyFrom(other);
+    }
+    
+    /**
+     * Constructor that allocates an empty board.
+     * @param rows num rows for board
+     * @param cols num cols for board
+     * @param symb num symbols to be used on board
+     * @param rand random num generator for new Gems
+     */
+    private GemManager(int rows, int cols, int symb, GemRandom rand){
         this.numRows = rows;
         this.numCols = cols;
         this.numSymbols = symb; 
         numDeleteCol = new int[numCols]; // Keeps track of num to remove per col
-        rand = new Random(randSeed);
-        board = new Gem[numCols][numRows];
-        gemsToRemove = new LinkedList<Gem>();
-        gemsToCheck = new LinkedList<Gem>();
+        lowDeleteCol = new int[numCols];
+        deleteCols = new CellSet(numCols);
+        refill = new byte[0];
+        this.rand = rand;
+        colRunStart = new int[numCols];
+        colRunEnd = new int[numCols];
+        colRunPass = new long[numCols];
+        checker = new RunChecker(0, numCols, false);
+        board = new ByteBoard(numRows, numCols);
+        cells = board.cells();
+        gemsToRemove = new CellSet(numRows * numCols);
+        gemsToCheck = new CellSet(numRows * numCols);
+        changed = new CellSet(numRows * numCols);
         turnScore = 0;
-        
-        initBoard();
     }
     
     /**
@@ -74,13 +146,43 @@ public class GemManager{
     }
     
     /**
-     * Get method for specific Gem.
+     * Get method for specific Gem.  The board only stores types, so the Gem is a
+     * view created on request; changing its type does not change the board.
      * @param x x-coordinate of Gem
      * @param y y-coordinate of Gem
      * @return Gem at (x,y) location in board
      */
     public Gem getGem(int x, int y){
-        return board[x][y];
+        return new Gem(x, y, board.getType(x, y));
+    }
+    
+    /**
+     * Get method for the type at a board location, without creating a Gem.
+     * @param x x-coordinate of Gem
+     * @param y y-coordinate of Gem
+     * @return type at (x,y) location in board
+     */
+    public int getType(int x, int y){
+        return board.getType(x, y);
+    }
+    
+    /**
+     * Copies a stretch of the packed row-major types, e.g. one row of a tile.
+     * @param from row-major index of the first cell
+     * @param into array to copy into
+     * @param offset position in into of the first cell
+     * @param length number of cells
+     */
+    public void copyCells(int from, byte[] into, int offset, int length){
+        System.arraycopy(cells, from, into, offset, length);
+    }
+    
+    /**
+     * Get method for the board storage.
+     * @return Board holding the types of every cell
+     */
+    public Board getBoard(){
+        return board;
     }
     
     /**
@@ -92,17 +194,341 @@ public class GemManager{
     }
     
     /**
-     * Initialize the board with random Gems to fill the rows and cols.
+     * Get method for cascadeDepth.
+     * @return number of matching steps in the last cascade
+     */
+    public int getCascadeDepth(){
+        return cascadeDepth;
+    }
+    
+    /**
+     * Copies the Gems and pending checks of another board of the same size into this one,
+     * so one scratch board can be reused for many copies.  The random num generator is
+     * not copied.
+     * @param other board to copy
+     */
+    public void copyFrom(GemManager other){
+        if(other.numRows != numRows || other.numCols != numCols){
+            throw new IllegalArgumentException("Board sizes differ");
+        }
+        System.arraycopy(other.cells, 0, cells, 0, numRows * numCols);
+        System.arraycopy(other.numDeleteCol, 0, numDeleteCol, 0, numCols);
+        System.arraycopy(other.lowDeleteCol, 0, lowDeleteCol, 0, numCols);
+        deleteCols.copyFrom(other.deleteCols);
+        gemsToRemove.copyFrom(other.gemsToRemove);
+        gemsToCheck.copyFrom(other.gemsToCheck);
+        changed.copyFrom(other.changed);
+        shifted = other.shifted;
+        numSymbols = other.numSymbols;
+        stable = other.stable;
+        turnScore = other.turnScore;
+        cascadeDepth = other.cascadeDepth;
+    }
+    
+    /**
+     * Starts a new game on this manager, dealing the same board as a new GemManager with
+     * the same arguments would.  The board and its bookkeeping are reused when they can
+     * hold the new size, so restarting at the same or a smaller size allocates nothing;
+     * a larger size grows them.  The recorder and event buffer are detached, and the
+     * pool and the stable setting are kept.  Every cell is reported as changed.
+     * @param rows num rows for board
+     * @param cols num cols for board
+     * @param symb num symbols to be used on board
+     * @param randSeed constant for random num generator
+     */
+    public void reset(int rows, int cols, int symb, long randSeed){
+        if(rows != numRows || cols != numCols){
+            resize(rows, cols);
+        }
+        numSymbols = symb;
+        rand.setSeed(randSeed);
+        Arrays.fill(numDeleteCol, 0);
+        Arrays.fill(lowDeleteCol, 0);
+        deleteCols.clear();
+        gemsToRemove.clear();
+        gemsToCheck.clear();
+        changed.clear();
+        recorder = null;
+        events = null;
+        turnScore = 0;
+        cascadeDepth = 0;
+        
+        initBoard();
+    }
+    
+    /**
+     * Changes the size of the board for reset.  Arrays already long enough are kept, so
+     * their stale entries past the new size are never read.  The scanner, the stripe
+     * checkers and the stripes' task trees are made again on first use, at the new size.
+     * @param rows num rows for board
+     * @param cols num cols for board
+     */
+    private void resize(int rows, int cols){
+        numRows = rows;
+        numCols = cols;
+        if(numDeleteCol.length < cols){
+            numDeleteCol = new int[cols];
+            lowDeleteCol = new int[cols];
+            colRunStart = new int[cols];
+            colRunEnd = new int[cols];
+            colRunPass = new long[cols];
+        }
+        if(checker.rowRunStart.length < rows){
+            checker = new RunChecker(0, cols, false);
+        }
+        checker.xEnd = cols;
+        stripeCheckers = null;
+        checkTask = null;
+        shiftTask = null;
+        scanner = null;
+        deleteCols.resize(cols);
+        board.resize(rows, cols);
+        cells = board.cells();
+        gemsToRemove.resize(rows * cols);
+        gemsToCheck.resize(rows * cols);
+        changed.resize(rows * cols);
+    }
+    
+    /**
+     * Checks whether reset to a size reuses all of the board's storage.
+     * @param rows num rows for board
+     * @param cols num cols for board
+     * @return true if a reset to rows x cols allocates nothing
+     */
+    public boolean canHold(int rows, int cols){
+        return rows * cols <= cells.length && cols <= numDeleteCol.length && rows <= checker.rowRunStart.length;
+    }
+    
+    /**
+     * Sets the pool that checks and shifts of large steps run on in stripes of columns.
+     * The board is the same as the sequential result whatever the pool's parallelism.
+     * Steps on boards narrower than two stripes, and every step on a pool of one worker,
+     * run on the calling thread.
+     * @param pool fork-join pool to use, or null to resolve every step sequentially
+     */
+    public void setPool(ForkJoinPool pool){
+        this.pool = pool;
+    }
+    
+    /**
+     * Reseeds the random num generator used for new Gems.
+     * @param randSeed constant for random num generator
+     */
+    public void setSeed(long randSeed){
+        rand.setSeed(randSeed);
+    }
+    
+    /**
+     * Attaches a recorder that is told of every swap, shuffle, board refill and scored
+     * removal from now on.  ReplayRecorder attaches itself to the game it creates.
+     * @param recorder recorder to notify, or null to stop recording
+     */
+    public void setRecorder(ReplayRecorder recorder){
+        this.recorder = recorder;
+    }
+    
+    /**
+     * Attaches a buffer that receives a per-cell event for every swap, removal, fall and
+     * new Gem from now on, so a renderer can animate cascades after they resolve.
+     * Boards recording events shift their columns sequentially.
+     * @param events buffer to append to, or null to stop recording
+     */
+    public void setEvents(CascadeEvents events){
+        this.events = events;
+    }
+    
+    /**
+     * Get method for the random num generator, e.g. to split off a stream for a copy.
+     * @return generator drawing the new Gems
+     */
+    public GemRandom getRandom(){
+        return rand;
+    }
+    
+    /**
+     * Saves the Gems and the state of the random num generator.  Restoring the snapshot
+     * later makes the board draw the same new Gems again.  Only settled boards can be
+     * saved, since pending checks are not part of a snapshot.
+     * @return new snapshot
+     */
+    public byte[] snapshot(){
+        return snapshot(new byte[numRows * numCols + 8]);
+    }
+    
+    /**
+     * Saves the Gems and the state of the random num generator into a reused array.
+     * The Gems are one array copy of the packed board; the generator state follows them
+     * in the last 8 bytes.
+     * @param into array of numRows * numCols + 8 bytes to fill
+     * @return the filled array
+     */
+    public byte[] snapshot(byte[] into){
+        long state = rand.getState();
+        int n = numRows * numCols;
+        
+        if(!gemsToCheck.isEmpty() || !gemsToRemove.isEmpty()){
+            throw new IllegalStateException("Board must be settled to take a snapshot");
+        }
+        System.arraycopy(cells, 0, into, 0, n);
+        for(int b = 0; b < 8; b++){
+            into[n + b] = (byte) (state >>> (56 - 8 * b));
+        }
+        return into;
+    }
+    
+    /**
+     * Restores a snapshot taken of this board or of another board of the same size.
+     * Every cell is reported as changed, so a MoveFinder should be rebuilt afterwards.
+     * @param snapshot array filled by snapshot
+     */
+    public void restore(byte[] snapshot){
+        long state = 0;
+        int n = numRows * numCols;
+        
+        if(snapshot.length != n + 8){
+            throw new IllegalArgumentException("Snapshot is for a different board size");
+        }
+        System.arraycopy(snapshot, 0, cells, 0, n);
+        for(int b = 0; b < 8; b++){
+            state = state << 8 | (snapshot[n + b] & 0xFF);
+        }
+        rand.setState(state);
+        gemsToCheck.clear();
+        gemsToRemove.clear();
+        changed.addRange(0, n - 1);
+        shifted = false;
+    }
+    
+    /**
+     * Checks whether initBoard deals stable boards.
+     * @return true if boards are dealt with no matches and at least one move
+     */
+    public boolean isStable(){
+        return stable;
+    }
+    
+    /**
+     * Initialize the board with random Gems to fill the rows and cols.  Boards made
+     * stable are dealt by dealStable instead.
      */
     public void initBoard(){
+        if(stable && numSymbols >= 3){
+            dealStable();
+            return;
+        }
         for(int y = 0; y < numRows; y++){
             for(int x = 0; x < numCols; x++){
-                board[x][y] = new Gem(x,y,randType());
-                gemsToCheck.add(board[x][y]);
+                board.setType(x, y, randType());
+                gemsToCheck.add(x * numRows + y);
+                changed.add(x * numRows + y);
+            }
+        }
+        shifted = false;
+        if(recorder != null){
+            recorder.refill();
+        }
+    }
+    
+    /**
+     * Deals a board with no runs of 3 in one pass.  Cells are filled row by row, and a
+     * cell may not take the type of the two cells to its left if they match, nor of
+     * the two cells above it if they match, so every cell has at least numSymbols - 2
+     * types to draw from.  A board with no move is dealt again, up to MAX_DEALS times,
+     * which on boards of a few rows and columns is rare and on larger ones never seen.
+     * Nothing is left to check, so the board needs no cascade.
+     */
+    private void dealStable(){
+        int row, left, up, choices, type;
+        int deals = 0;
+        
+        do{
+            for(int y = 0; y < numRows; y++){
+                row = y * numCols;
+                for(int x = 0; x < numCols; x++){
+                    left = x >= 2 && cells[row + x - 1] == cells[row + x - 2] ? cells[row + x - 1] : 0;
+                    up = y >= 2 && cells[row - numCols + x] == cells[row - 2 * numCols + x] ? cells[row - numCols + x] : 0;
+                    if(left > up){ // Skip the smaller excluded type first
+                        type = left;
+                        left = up;
+                        up = type;
+                    }
+                    choices = numSymbols - (left > 0 ? 1 : 0) - (up > 0 && up != left ? 1 : 0);
+                    type = rand.nextInt(choices) + 1;
+                    if(left > 0 && type >= left){
+                        type++;
+                    }
+                    if(up > 0 && up != left && type >= up){
+                        type++;
+                    }
+                    cells[row + x] = (byte) type;
+                }
             }
+        } while(++deals < MAX_DEALS && !hasMove());
+        gemsToCheck.clear();
+        changed.addRange(0, numRows * numCols - 1);
+        shifted = false;
+        if(recorder != null){
+            recorder.refill();
         }
     }
     
+    /**
+     * Looks for any swap that makes a match, stopping at the first.
+     * @return true if the board has a move
+     */
+    private boolean hasMove(){
+        for(int y = 0; y < numRows; y++){
+            for(int x = 0; x < numCols; x++){
+                if((x + 1 < numCols && isMatchingSwap(x, y, x + 1, y))
+                   || (y + 1 < numRows && isMatchingSwap(x, y, x, y + 1))){
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Shuffles the Gems already on the board with a Fisher-Yates pass, used when the
+     * board has no moves left.  The shuffled board may hold matches, so it should be
+     * cascaded before play continues.
+     */
+    public void shuffle(){
+        byte temp;
+        int j;
+        
+        for(int i = numRows * numCols - 1; i > 0; i--){
+            j = rand.nextInt(i + 1);
+            temp = cells[i];
+            cells[i] = cells[j];
+            cells[j] = temp;
+        }
+        for(int i = 0; i < numRows * numCols; i++){
+            gemsToCheck.add(i);
+            changed.add(i);
+        }
+        shifted = false;
+        if(recorder != null){
+            recorder.shuffle();
+        }
+    }
+    
+    /**
+     * Get method for the cells whose type changed through swapGems, changeType,
+     * shiftGems, initBoard or shuffle since clearChangedCells was last called.
+     * @return live set of changed cells, indexed column-major (x * numRows + y)
+     */
+    public CellSet getChangedCells(){
+        return changed;
+    }
+    
+    /**
+     * Empties the set of changed cells once a caller has consumed it.
+     */
+    public void clearChangedCells(){
+        changed.clear();
+    }
+    
     /**
      * Selects random number based upon how many symbols are in game
      * @return random number
@@ -113,25 +539,137 @@ public class GemManager{
     }
 
     /**
-     * Find matches of 3 or more.
-     * @return Size of Collection of Gems flagged for removal
+     * Find matches of 3 or more.  Runs walked by earlier passes are told apart by their
+     * pass number instead of being cleared, so a check costs the number of cells to check
+     * rather than the board's height and width.  Checks of the whole board, after
+     * initBoard or shuffle, first find the Gems in runs with a MatchScanner and walk only
+     * those.  Other large checks are split into stripes of columns checked in parallel,
+     * see CheckStripe, unless events are recorded, which needs the runs in order.
+     * @return Number of Gems flagged for removal
      */
     public int checkBoard(){
-        int x, y;
+        long start = GemMetrics.ENABLED ? System.nanoTime() : 0;
         
         turnScore = 0;
+        checkPass++;
         
-        for(Gem gem: gemsToCheck){
-            x = gem.getX();
-            y = gem.getY();
-            horizontalCheck(x,y);
-            verticalCheck(x,y);
-        } 
+        if(gemsToCheck.size() == numRows * numCols){
+            checkAll();
+        } else if(events == null && inStripes(gemsToCheck.size())){
+            checkStripes();
+        } else {
+            for(int i = gemsToCheck.nextSetBit(0); i >= 0; i = gemsToCheck.nextSetBit(i + 1)){
+                checker.check(i / numRows, i % numRows);
+            }
+            turnScore += checker.takeScore();
+        }
         gemsToCheck.clear();
+        if(GemMetrics.ENABLED){
+            GemMetrics.CHECK_BOARD.record(System.nanoTime() - start);
+        }
         
         return gemsToRemove.size();
     }
-
+    
+    /**
+     * Checks the whole board.  Every run of 3 or more is made of cells the scanner marks,
+     * so walking the marked cells finds and scores the same runs as walking every cell.
+     * They are walked row by row, which still meets each row's and each column's cells
+     * in increasing order, as the run memos need.
+     */
+    private void checkAll(){
+        int rowWords;
+        long word;
+        
+        if(scanner == null){
+            scanner = new MatchScanner(numRows, numCols);
+        }
+        if(scanner.scan(cells) > 0){
+            rowWords = scanner.getRowWords();
+            for(int y = 0; y < numRows; y++){
+                for(int w = 0; w < rowWords; w++){
+                    word = scanner.getWord(y, w);
+                    while(word != 0){
+                        checker.check((w << 6) + Long.numberOfTrailingZeros(word), y);
+                        word &= word - 1;
+                    }
+                }
+            }
+        }
+        turnScore += checker.takeScore();
+    }
+    
+    /**
+     * Counts the Gems in runs of 3 or more with a MatchScanner, without flagging them.
+     * @return number of Gems in runs
+     */
+    public int countMatched(){
+        if(scanner == null){
+            scanner = new MatchScanner(numRows, numCols);
+        }
+        return scanner.scan(cells);
+    }
+    
+    /**
+     * Counts the Gems in runs of 3 or more by walking out from every cell with numInRow,
+     * the scalar check that countMatched replaces.  Kept for benchmarks and checks.
+     * @return number of Gems in runs
+     */
+    public int countMatchedScalar(){
+        int count = 0;
+        
+        for(int y = 0; y < numRows; y++){
+            for(int x = 0; x < numCols; x++){
+                if(numInRow(x, y, Direction.E) + numInRow(x, y, Direction.W) >= 2
+                   || numInRow(x, y, Direction.N) + numInRow(x, y, Direction.S) >= 2){
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * Decides whether a step is worth splitting into stripes of columns.  A pool of one
+     * worker gains nothing over the calling thread and only adds the merging.
+     * @param cells number of Gems the step checks or removes
+     * @return true if the step should run on the pool
+     */
+    private boolean inStripes(int cells){
+        return pool != null && pool.getParallelism() > 1 && cells >= PARALLEL_CELLS && numCols >= 2 * STRIPE_COLS;
+    }
+    
+    /**
+     * Checks every stripe on the pool, then merges the stripes' flagged Gems and scores
+     * in stripe order.  The checkers and their task tree are made once per board size
+     * and reused, so a parallel check allocates nothing.
+     */
+    private void checkStripes(){
+        RunChecker stripe;
+        
+        if(stripeCheckers == null){
+            stripeCheckers = new RunChecker[(numCols + STRIPE_COLS - 1) / STRIPE_COLS];
+            for(int s = 0; s < stripeCheckers.length; s++){
+                stripeCheckers[s] = new RunChecker(s * STRIPE_COLS, Math.min((s + 1) * STRIPE_COLS, numCols), true);
+            }
+            checkTask = new CheckStripe(0, stripeCheckers.length);
+        }
+        checkTask.reinitialize();
+        pool.invoke(checkTask);
+        for(int s = 0; s < stripeCheckers.length; s++){
+            stripe = stripeCheckers[s];
+            for(int k = 0; k < stripe.numFlagged; k++){
+                gemsToRemove.add(stripe.flagged[k]);
+            }
+            for(int k = 0; k < stripe.numRuns; k += 2){
+                gemsToRemove.addRange(stripe.runs[k], stripe.runs[k + 1]);
+            }
+            stripe.numFlagged = 0;
+            stripe.numRuns = 0;
+            turnScore += stripe.takeScore();
+        }
+    }
+    
     /**
      * Checks to the left and right for horizontal combos of 3 or more on board around
      * swapped piece. Flags pieces for removal in the event of chains of 3 or more.
@@ -139,24 +677,8 @@ public class GemManager{
      * @param y0 y coordinate for starting point
      */
     public void horizontalCheck(int x0, int y0){
-        int n1, n2, totalInRow;
-        boolean scoreFlag = false; // Ensures proper scoring with gems that are in 2 matching strings.
-                
-        n1 = numInRow(x0, y0, Direction.E);
-        n2 = numInRow(x0, y0, Direction.W);
-        totalInRow = n1 + n2 + 1;
-        
-        if(totalInRow >= 3){
-            for(int x = x0 - n2; x <= x0 + n1; x++){
-                if(!gemsToRemove.contains(board[x][y0])){
-                    if(!scoreFlag){
-                        scoreFlag = true;
-                        chainScore(totalInRow);
-                    }
-                    gemsToRemove.add(board[x][y0]);
-                }
-            }
-        }
+        checker.horizontalCheck(x0, y0);
+        turnScore += checker.takeScore();
     }
     
     /**
@@ -166,25 +688,315 @@ public class GemManager{
      * @param y0 y coordinate for starting point
      */
     public void verticalCheck(int x0, int y0){
-        int n1, n2, totalInRow;
-        boolean scoreFlag = false; // Ensures proper scoring with gems that are in 2 matching strings.
+        checker.verticalCheck(x0, y0);
+        turnScore += checker.takeScore();
+    }
+    
+    /**
+     * This class walks the runs through checked cells, for the whole board or for one
+     * stripe of columns.  It remembers the last run walked in each row so a run is only
+     * walked once per checkBoard: a cell that lies in the last run walked in its row (or
+     * column) would find the same, already flagged, run again.  Columns belong to one
+     * stripe, so the column memo is shared.
+     *
+     * A horizontal run can cross into the stripes on either side, which a stripe reads
+     * as a halo of cells beyond its edges.  The run belongs to the stripe holding its
+     * leftmost checked cell, so a stripe skips a run that has a checked cell left of its
+     * first column, and every run is still walked and scored exactly once.
+     */
+    private class RunChecker{
+        // Instance Variables
+        private int xFirst, xEnd; // Columns of the stripe, xEnd exclusive
+        private int[] rowRunStart, rowRunEnd; // Last run walked in each row during a check
+        private long[] rowRunPass; // checkBoard pass each row's last run was walked in
+        private int score;
+        private boolean buffered; // Flags into flagged and runs rather than gemsToRemove
+        private int[] flagged; // Row-major cells of the vertical runs flagged by a stripe
+        private int[] runs; // Row-major first and last cells of the horizontal runs flagged by a stripe
+        private int numFlagged, numRuns;
+        
+        /**
+         * Constructor for a checker of a stripe of columns.  A buffered checker sizes its
+         * buffers for the most a check can flag, so they never grow: every cell of its
+         * columns in one vertical run, and in each row as many horizontal runs of 3 as
+         * fit across its columns, plus one reaching in from each side.
+         * @param xFirst first column of the stripe
+         * @param xEnd one past the last column of the stripe
+         * @param buffered true if checks run concurrently and flagged cells are merged afterwards
+         */
+        public RunChecker(int xFirst, int xEnd, boolean buffered){
+            this.xFirst = xFirst;
+            this.xEnd = xEnd;
+            this.buffered = buffered;
+            rowRunStart = new int[numRows];
+            rowRunEnd = new int[numRows];
+            rowRunPass = new long[numRows];
+            flagged = new int[buffered ? numRows * (xEnd - xFirst) : 0];
+            runs = new int[buffered ? 2 * numRows * ((xEnd - xFirst) / 3 + 2) : 0];
+        }
+        
+        /**
+         * Runs the horizontal and vertical checks for one cell, skipping runs already walked.
+         * @param x x coordinate of cell
+         * @param y y coordinate of cell
+         */
+        public void check(int x, int y){
+            if(rowRunPass[y] != checkPass || x < rowRunStart[y] || x > rowRunEnd[y]){
+                horizontalCheck(x,y);
+            }
+            if(colRunPass[x] != checkPass || y < colRunStart[x] || y > colRunEnd[x]){
+                verticalCheck(x,y);
+            }
+        }
         
-        n1 = numInRow(x0, y0, Direction.N);
-        n2 = numInRow(x0, y0, Direction.S);
-        totalInRow = n1 + n2 + 1;
+        /**
+         * Walks the horizontal run through a cell and flags it if it is 3 or more long.
+         * @param x0 x coordinate for starting point
+         * @param y0 y coordinate for starting point
+         */
+        public void horizontalCheck(int x0, int y0){
+            int row = y0 * numCols;
+            int type = cells[row + x0];
+            int x1 = x0, x2 = x0, totalInRow;
+            long key;
+            boolean scoreFlag = false; // Ensures proper scoring with gems that are in 2 matching strings.
+            
+            while(x1 > 0 && cells[row + x1 - 1] == type){
+                x1--;
+            }
+            while(x2 < numCols - 1 && cells[row + x2 + 1] == type){
+                x2++;
+            }
+            rowRunStart[y0] = x1;
+            rowRunEnd[y0] = x2;
+            rowRunPass[y0] = checkPass;
+            totalInRow = x2 - x1 + 1;
+            
+            if(totalInRow >= 3 && !checkedLeft(x1, y0)){
+                key = rowRunKey(x1, x2, y0);
+                for(int x = x1; x <= x2; x++){
+                    if(!buffered){
+                        gemsToRemove.add(row + x);
+                    }
+                    if(!scoreFlag && !coveredInCol(x, y0, key)){
+                        scoreFlag = true;
+                        score += runScore(totalInRow);
+                    }
+                }
+                if(buffered){
+                    runs[numRuns++] = row + x1;
+                    runs[numRuns++] = row + x2;
+                }
+                if(events != null && !buffered){
+                    events.chain(x1, y0, x2, y0, type, scoreFlag ? runScore(totalInRow) : 0);
+                }
+            }
+        }
         
-        if(totalInRow >= 3){
-            for(int y = y0 - n2; y <= y0 + n1; y++){
-                if(!gemsToRemove.contains(board[x0][y])){
-                    if(!scoreFlag){
+        /**
+         * Walks the vertical run through a cell and flags it if it is 3 or more long.
+         * @param x0 x coordinate for starting point
+         * @param y0 y coordinate for starting point
+         */
+        public void verticalCheck(int x0, int y0){
+            int type = cells[y0 * numCols + x0];
+            int y1 = y0, y2 = y0, totalInRow;
+            long key;
+            boolean scoreFlag = false; // Ensures proper scoring with gems that are in 2 matching strings.
+            
+            while(y1 > 0 && cells[(y1 - 1) * numCols + x0] == type){
+                y1--;
+            }
+            while(y2 < numRows - 1 && cells[(y2 + 1) * numCols + x0] == type){
+                y2++;
+            }
+            colRunStart[x0] = y1;
+            colRunEnd[x0] = y2;
+            colRunPass[x0] = checkPass;
+            totalInRow = y2 - y1 + 1;
+            
+            if(totalInRow >= 3){
+                key = colRunKey(x0, y1);
+                for(int y = y1; y <= y2; y++){
+                    flag(y * numCols + x0);
+                    if(!scoreFlag && !coveredInRow(x0, y, key)){
                         scoreFlag = true;
-                        chainScore(totalInRow);
+                        score += runScore(totalInRow);
                     }
-                    gemsToRemove.add(board[x0][y]);
+                }
+                if(events != null && !buffered){
+                    events.chain(x0, y1, x0, y2, type, scoreFlag ? runScore(totalInRow) : 0);
                 }
             }
         }
-    }   
+        
+        /**
+         * Checks whether a horizontal run starting left of this stripe belongs to a stripe
+         * further left, because one of its cells there is being checked.
+         * @param x1 left end of the run
+         * @param y row of the run
+         * @return true if the run is walked by another stripe
+         */
+        private boolean checkedLeft(int x1, int y){
+            for(int x = x1; x < xFirst; x++){
+                if(gemsToCheck.contains(x * numRows + y)){
+                    return true;
+                }
+            }
+            return false;
+        }
+        
+        /**
+         * Flags a Gem of a vertical run for removal.
+         * @param i row-major cell index
+         */
+        private void flag(int i){
+            if(!buffered){
+                gemsToRemove.add(i);
+                return;
+            }
+            flagged[numFlagged++] = i;
+        }
+        
+        /**
+         * Returns the score of the runs walked since the last call and resets it.
+         * @return score of those runs
+         */
+        public int takeScore(){
+            int taken = score;
+            
+            score = 0;
+            return taken;
+        }
+    }
+    
+    /**
+     * Fork-join task that checks a range of stripes.  Each stripe walks the checked cells
+     * of its own columns in column-major order; the board and gemsToCheck are only read.
+     * The halves of a range are made with it and reinitialized for every check.
+     */
+    private class CheckStripe extends RecursiveAction{
+        private static final long serialVersionUID = 1L;
+        private int s1, s2;
+        private CheckStripe left, right; // Halves of a range of more than one stripe, or null
+        
+        /**
+         * Constructor for a range of stripes and the tasks for its halves.
+         * @param s1 first stripe in range
+         * @param s2 one past the last stripe in range
+         */
+        public CheckStripe(int s1, int s2){
+            this.s1 = s1;
+            this.s2 = s2;
+            if(s2 - s1 > 1){
+                int mid = (s1 + s2) >>> 1;
+                left = new CheckStripe(s1, mid);
+                right = new CheckStripe(mid, s2);
+            }
+        }
+        
+        /**
+         * Checks both halves of ranges of more than one stripe, otherwise checks the stripe.
+         */
+        protected void compute(){
+            RunChecker stripe;
+            int end;
+            
+            if(left != null){
+                left.reinitialize();
+                right.reinitialize();
+                invokeAll(left, right);
+                return;
+            }
+            stripe = stripeCheckers[s1];
+            end = stripe.xEnd * numRows;
+            for(int i = gemsToCheck.nextSetBit(stripe.xFirst * numRows); i >= 0 && i < end; i = gemsToCheck.nextSetBit(i + 1)){
+                stripe.check(i / numRows, i % numRows);
+            }
+        }
+    }
+    
+    /**
+     * Orders runs the way a cell-by-cell scan reaches them: row by row over the whole
+     * board after initBoard, and column by column over every cell from the top down to
+     * the lowest emptied cell of each shifted column after shiftGems.  A run is reached
+     * at its first scanned cell; a horizontal run is checked before a vertical one
+     * reached at the same cell.  A run scores only if one of its gems was not already
+     * flagged by a run reached before it, which keeps the score independent of the order
+     * gemsToCheck is visited in.
+     * @param x1 left end of horizontal run
+     * @param x2 right end of horizontal run
+     * @param y row of horizontal run
+     * @return scan position of the run, lower is reached first
+     */
+    private long rowRunKey(int x1, int x2, int y){
+        if(!shifted){
+            return 2L * (y * numCols + x1);
+        }
+        for(int x = x1; x <= x2; x++){
+            if(numDeleteCol[x] > 0 && y <= lowDeleteCol[x]){
+                return 2L * (x * numRows + y);
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+    
+    /**
+     * Scan position of a vertical run, see rowRunKey.
+     * @param x column of vertical run
+     * @param y1 top end of vertical run
+     * @return scan position of the run, lower is reached first
+     */
+    private long colRunKey(int x, int y1){
+        if(!shifted){
+            return 2L * (y1 * numCols + x) + 1;
+        }
+        if(numDeleteCol[x] > 0 && y1 <= lowDeleteCol[x]){
+            return 2L * (x * numRows + y1) + 1;
+        }
+        return Long.MAX_VALUE;
+    }
+    
+    /**
+     * Checks whether a Gem of a horizontal run is also in a vertical run reached before it.
+     * @param x0 x coordinate of Gem
+     * @param y0 y coordinate of Gem
+     * @param key scan position of the horizontal run
+     * @return true if the Gem was already flagged when the horizontal run was reached
+     */
+    private boolean coveredInCol(int x0, int y0, long key){
+        int type = cells[y0 * numCols + x0];
+        int y1 = y0, y2 = y0;
+        
+        while(y1 > 0 && cells[(y1 - 1) * numCols + x0] == type){
+            y1--;
+        }
+        while(y2 < numRows - 1 && cells[(y2 + 1) * numCols + x0] == type){
+            y2++;
+        }
+        return y2 - y1 >= 2 && colRunKey(x0, y1) < key;
+    }
+    
+    /**
+     * Checks whether a Gem of a vertical run is also in a horizontal run reached before it.
+     * @param x0 x coordinate of Gem
+     * @param y0 y coordinate of Gem
+     * @param key scan position of the vertical run
+     * @return true if the Gem was already flagged when the vertical run was reached
+     */
+    private boolean coveredInRow(int x0, int y0, long key){
+        int row = y0 * numCols;
+        int type = cells[row + x0];
+        int x1 = x0, x2 = x0;
+        
+        while(x1 > 0 && cells[row + x1 - 1] == type){
+            x1--;
+        }
+        while(x2 < numCols - 1 && cells[row + x2 + 1] == type){
+            x2++;
+        }
+        return x2 - x1 >= 2 && rowRunKey(x1, x2, y0) < key;
+    }
     
     /**
      * Searches in indicated Direction for matching Gems.  Keeps count. Ensures
@@ -195,20 +1007,32 @@ public class GemManager{
      * @return num of consecutive symbols
      */
     public int numInRow(int x0, int y0, Direction dir){
-        int[] newPos = new int[2];
-        int type = board[x0][y0].getType();
+        int dx = 0, dy = 0;
+        int type = cells[y0 * numCols + x0];
         int x = x0;
         int y = y0;
         int count = 0;
         
+        switch(dir){
+            case N: 
+                dy = 1;
+                break;
+            case S: 
+                dy = -1;
+                break;
+            case W: 
+                dx = -1;
+                break;
+            case E: 
+                dx = 1;
+        }
         while(true){
-            newPos = move(x, y, dir);
-            x = newPos[0];
-            y = newPos[1];
+            x += dx;
+            y += dy;
             if(!isInBoard(x,y)){
                 break;
             }
-            if(type == board[x][y].getType()){
+            if(type == cells[y * numCols + x]){
                 count += 1;
             }
             else{
@@ -263,7 +1087,16 @@ public class GemManager{
      * @param n number of Gems matching string.
      */
     public void chainScore(int n){
-        turnScore += 100 * n + (n - 3) * 100; 
+        turnScore += runScore(n);
+    }
+    
+    /**
+     * Score of one horizontal or vertical matching string of Gems.
+     * @param n number of Gems matching string.
+     * @return score of the string
+     */
+    private static int runScore(int n){
+        return 100 * n + (n - 3) * 100; 
     }
     
     /**
@@ -271,44 +1104,175 @@ public class GemManager{
      * the tops of columns with new random Gems.
      */
     public void changeType(){
-        for(int x = 0; x < numCols; x++){
-            numDeleteCol[x] = 0;
+        long start = GemMetrics.ENABLED ? System.nanoTime() : 0;
+        int x;
+        
+        for(int c = deleteCols.nextSetBit(0); c >= 0; c = deleteCols.nextSetBit(c + 1)){
+            numDeleteCol[c] = 0;
+        }
+        deleteCols.clear();
+        if(events != null){
+            events.nextStep();
         }
         // Change type of all Gems in  gemsToRemove to 0
-        for(Gem gemDelete : gemsToRemove){
-            gemDelete.setType(0);
-            numDeleteCol[gemDelete.getX()]++;
+        for(int i = gemsToRemove.nextSetBit(0); i >= 0; i = gemsToRemove.nextSetBit(i + 1)){
+            x = i % numCols;
+            if(events != null){
+                events.vanish(x, i / numCols, cells[i]);
+            }
+            board.set(i, 0);
+            changed.add(x * numRows + i / numCols);
+            numDeleteCol[x]++;
+            deleteCols.add(x);
+            lowDeleteCol[x] = i / numCols; // Rows are visited top to bottom
         }
         
         gemsToRemove.clear(); // Empty after flags are changed on current play
+        if(recorder != null){
+            recorder.removed(turnScore);
+        }
+        if(GemMetrics.ENABLED){
+            GemMetrics.CHANGE_TYPE.record(System.nanoTime() - start);
+        }
     }
     
     /**
-     * Loop through each column starting at the top, shifting and replacing
-     * Gems as necessary
+     * Loop through each column, compacting the remaining Gems down in place and 
+     * refilling the top with new random Gems.  Only cells whose type changed are
+     * queued for checking, and only the columns changeType emptied are visited.  Steps
+     * removing many Gems compact stripes of columns in parallel after drawing every new
+     * type in column order, so the board is the same as the sequential result for a
+     * given seed.
      */
-    public void shiftGems() {
-        LinkedList<Integer> types = new LinkedList<Integer>(); // Holds shifting Gems
-        int numDelete, type;
-        Gem gem;
+    public void shiftGems(){
+        long start = GemMetrics.ENABLED ? System.nanoTime() : 0;
+        int total = 0;
         
-        for(int x = 0; x < numCols; x++){
-            numDelete = numDeleteCol[x];
-            types.clear();
-            for(int i = 0; i < numDelete; i++){
-                types.add(randType());
+        for(int c = deleteCols.nextSetBit(0); c >= 0; c = deleteCols.nextSetBit(c + 1)){
+            total += numDeleteCol[c];
+        }
+        if(!inStripes(total) || events != null){
+            for(int c = deleteCols.nextSetBit(0); c >= 0; c = deleteCols.nextSetBit(c + 1)){
+                shiftColumn(c, -1); // New Gems are drawn in column order
             }
-            for(int y = 0; y < numRows; y++){
-                if(types.size() == 0){
-                    break;
+        } else {
+            if(refill.length < total){
+                refill = new byte[Math.max(total, refill.length * 2)];
+            }
+            for(int i = 0; i < total; i++){
+                refill[i] = (byte) randType();
+            }
+            if(shiftTask == null){
+                shiftTask = new ShiftStripe(0, numCols);
+            }
+            shiftTask.reinitialize();
+            pool.invoke(shiftTask);
+            gemsToCheck.recount();
+            changed.recount();
+        }
+        shifted = true;
+        if(GemMetrics.ENABLED){
+            GemMetrics.SHIFT_GEMS.record(System.nanoTime() - start);
+        }
+    }
+    
+    /**
+     * Two-pointer compaction of one column.  The read pointer walks up from the lowest
+     * emptied cell and the write pointer follows it, so each surviving Gem moves down
+     * once.  The emptied cells left at the top are filled in order from y = 0.
+     * @param x column to shift
+     * @param refillAt offset of this column's new types in refill, or -1 to draw them now
+     */
+    private void shiftColumn(int x, int refillAt){
+        int numDelete = numDeleteCol[x];
+        int w = lowDeleteCol[x];
+        int type;
+        
+        for(int y = w; y >= 0; y--){
+            type = cells[y * numCols + x];
+            if(type != 0){
+                if(events != null && y != w){
+                    events.fall(x, y, w, type);
+                }
+                if(cells[w * numCols + x] != type){
+                    cells[w * numCols + x] = (byte) type;
+                    markShifted(x * numRows + w, refillAt >= 0);
                 }
-                gem = board[x][y];
-                type = gem.getType();
-                if(type != 0){
-                    types.add(type);
+                w--;
+            }
+        }
+        for(int y = 0; y < numDelete; y++){
+            type = refillAt < 0 ? randType() : refill[refillAt + y];
+            if(events != null){
+                events.spawn(x, y - numDelete, y, type);
+            }
+            if(cells[y * numCols + x] != type){
+                cells[y * numCols + x] = (byte) type;
+                markShifted(x * numRows + y, refillAt >= 0);
+            }
+        }
+    }
+    
+    /**
+     * Queues a cell whose type changed during a shift for checking and records it as changed.
+     * @param i column-major cell index
+     * @param concurrent true when called from a ShiftStripe, the sets are recounted afterwards
+     */
+    private void markShifted(int i, boolean concurrent){
+        if(concurrent){
+            gemsToCheck.addUncounted(i);
+            changed.addUncounted(i);
+        } else {
+            gemsToCheck.add(i);
+            changed.add(i);
+        }
+    }
+    
+    /**
+     * Fork-join task that shifts a stripe of columns.  Stripes split on multiples of 
+     * STRIPE_COLS columns so that no two stripes share a word of the column-major sets.
+     * The halves of a wide stripe are made with it and reinitialized for every shift.
+     */
+    private class ShiftStripe extends RecursiveAction{
+        private static final long serialVersionUID = 1L;
+        private int x1, x2;
+        private ShiftStripe left, right; // Halves of a wide stripe, or null
+        
+        /**
+         * Constructor for a stripe of columns and the tasks for its halves.
+         * @param x1 first column in stripe
+         * @param x2 one past the last column in stripe
+         */
+        public ShiftStripe(int x1, int x2){
+            this.x1 = x1;
+            this.x2 = x2;
+            if(x2 - x1 >= 2 * STRIPE_COLS){
+                int mid = x1 + (x2 - x1) / (2 * STRIPE_COLS) * STRIPE_COLS;
+                left = new ShiftStripe(x1, mid);
+                right = new ShiftStripe(mid, x2);
+            }
+        }
+        
+        /**
+         * Shifts both halves of wide stripes, otherwise shifts every column in the stripe.
+         */
+        protected void compute(){
+            int refillAt = 0;
+            
+            if(left != null){
+                left.reinitialize();
+                right.reinitialize();
+                invokeAll(left, right);
+                return;
+            }
+            for(int x = 0; x < x1; x++){
+                refillAt += numDeleteCol[x];
+            }
+            for(int x = x1; x < x2; x++){
+                if(numDeleteCol[x] > 0){
+                    shiftColumn(x, refillAt);
+                    refillAt += numDeleteCol[x];
                 }
-                gem.setType(types.pop());
-                gemsToCheck.add(gem);
             }
         }
     }
@@ -322,13 +1286,128 @@ public class GemManager{
      * @param y2 y coordinate of second Gem
      */
     public void swapGems(int x1, int y1, int x2, int y2){
-        int tempType = board[x1][y1].getType();
+        int tempType = board.getType(x1, y1);
+        
+        gemsToCheck.add(x1 * numRows + y1);
+        gemsToCheck.add(x2 * numRows + y2);
+        if(tempType != board.getType(x2, y2)){
+            changed.add(x1 * numRows + y1);
+            changed.add(x2 * numRows + y2);
+        }
+        shifted = false;
+        if(recorder != null){
+            recorder.swap(x1, y1, x2, y2);
+        }
+        if(events != null){
+            events.swap(x1, y1, x2, y2);
+        }
+        
+        board.setType(x1, y1, board.getType(x2, y2));
+        board.setType(x2, y2, tempType);
+    }
         
-        gemsToCheck.add(board[x1][y1]);
-        gemsToCheck.add(board[x2][y2]);
+    /**
+     * Swaps the two Gems of an encoded move, see Move.
+     * @param move encoded swap
+     */
+    public void swapGems(int move){
+        int x = Move.x1(move, numCols);
+        int y = Move.y1(move, numCols);
+        
+        swapGems(x, y, Move.x2(move, numCols), Move.y2(move, numCols));
+    }
+    
+    /**
+     * Checks whether swapping two adjacent Gems would make a match by looking at the
+     * cells around them, without swapping or touching the board.
+     * @param x1 x coordinate of first Gem
+     * @param y1 y coordinate of first Gem
+     * @param x2 x coordinate of second Gem
+     * @param y2 y coordinate of second Gem
+     * @return true if the swap makes a run of 3 or more
+     */
+    public boolean isMatchingSwap(int x1, int y1, int x2, int y2){
+        int type1 = cells[y1 * numCols + x1];
+        int type2 = cells[y2 * numCols + x2];
         
-        board[x1][y1].setType(board[x2][y2].getType());
-        board[x2][y2].setType(tempType);
+        if(type1 == type2){
+            return false;
+        }
+        return makesRun(x2, y2, type1, x1, y1) || makesRun(x1, y1, type2, x2, y2);
+    }
+    
+    /**
+     * Checks whether a Gem of the given type moved to (x0,y0) would be in a run of 3 or
+     * more.  The cell it moved from holds the other Gem of the swap, so runs stop there.
+     * @param x0 x coordinate the Gem moves to
+     * @param y0 y coordinate the Gem moves to
+     * @param type type of the moving Gem
+     * @param xFrom x coordinate the Gem moves from
+     * @param yFrom y coordinate the Gem moves from
+     * @return true if the Gem would be in a run of 3 or more
+     */
+    private boolean makesRun(int x0, int y0, int type, int xFrom, int yFrom){
+        int row = y0 * numCols;
+        int count = 1;
+        
+        for(int x = x0 - 1; x >= 0 && x != xFrom && cells[row + x] == type; x--){
+            count++;
+        }
+        for(int x = x0 + 1; x < numCols && x != xFrom && cells[row + x] == type; x++){
+            count++;
+        }
+        if(count >= 3){
+            return true;
+        }
+        count = 1;
+        for(int y = y0 - 1; y >= 0 && y != yFrom && cells[y * numCols + x0] == type; y--){
+            count++;
+        }
+        for(int y = y0 + 1; y < numRows && y != yFrom && cells[y * numCols + x0] == type; y++){
+            count++;
+        }
+        return count >= 3;
+    }
+    
+    /**
+     * Checks, removes and shifts Gems until nothing matches.  Each step's turnScore is
+     * multiplied by the step number, as GemGUI scores a cascade during play.
+     * @return total score of the cascade
+     */
+    public int cascade(){
+        int score = 0;
+        
+        cascadeDepth = 0;
+        while(checkBoard() > 0){
+            changeType();
+            cascadeDepth++;
+            score += turnScore * cascadeDepth;
+            shiftGems();
+        }
+        return score;
+    }
+    
+    /**
+     * Plays a swap and resolves its whole cascade in one call, filling a reusable buffer
+     * with one batch for the move: the swap, every chain with its length, step and score,
+     * and the Gems removed, fallen and spawned.  A step's multiplier is its step number.
+     * The buffer is cleared first, and any buffer attached with setEvents is restored
+     * afterwards.
+     * @param move encoded move
+     * @param events buffer to fill
+     * @return total score of the move, the sum of its chains' scores
+     */
+    public int resolve(int move, CascadeEvents events){
+        CascadeEvents attached = this.events;
+        
+        events.clear();
+        this.events = events;
+        try{
+            swapGems(move);
+            return cascade();
+        } finally{
+            this.events = attached;
+        }
     }
         
     /**
@@ -340,7 +1419,7 @@ public class GemManager{
         
         for(int y = 0; y < numRows; y++){
             for(int x = 0; x < numCols; x++){
-                sb.append(charSymbol[board[x][y].getType()]);
+                sb.append(charSymbol[board.getType(x, y)]);
             }
             sb.append("\n");
         }
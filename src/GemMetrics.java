@@ -0,0 +1,124 @@
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * This class holds the play-time metrics: how long checkBoard, changeType and shiftGems
+ * take, how deep each move's cascade goes, how long the board takes to paint and how
+ * many cells it draws, how deep the engine's command queue gets, how long a command
+ * takes from submission until its frame is published, and how late the GUI's Swing
+ * timers tick.  They are off unless the program is started with
+ * -Dgem.metrics=true.  ENABLED is a static final flag, so with metrics off every guarded
+ * recording is dropped by the JIT and costs nothing.
+ *
+ * When on, each histogram is registered as a JMX MBean named
+ * gem:type=Histogram,name=NAME, for jconsole or any JMX client, and a daemon thread
+ * prints all of them to System.err every gem.metrics.dumpSecs seconds (10 by default,
+ * 0 for no dump).
+ */
+public final class GemMetrics{
+    // Instance Variables
+    public static final boolean ENABLED = Boolean.getBoolean("gem.metrics");
+
+    public static final LatencyHistogram CHECK_BOARD = new LatencyHistogram("checkBoard", true);
+    public static final LatencyHistogram CHANGE_TYPE = new LatencyHistogram("changeType", true);
+    public static final LatencyHistogram SHIFT_GEMS = new LatencyHistogram("shiftGems", true);
+    public static final LatencyHistogram CASCADE_DEPTH = new LatencyHistogram("cascadeDepth", false);
+    public static final LatencyHistogram PAINT = new LatencyHistogram("paint", true);
+    public static final LatencyHistogram PAINT_CELLS = new LatencyHistogram("paintCells", false);
+    public static final LatencyHistogram QUEUE_DEPTH = new LatencyHistogram("queueDepth", false);
+    public static final LatencyHistogram COMMAND_LATENCY = new LatencyHistogram("commandLatency", true);
+    public static final LatencyHistogram FRAME_TIMER_LAG = new LatencyHistogram("frameTimerLag", true);
+    public static final LatencyHistogram CLOCK_TIMER_LAG = new LatencyHistogram("clockTimerLag", true);
+
+    private static final LatencyHistogram[] ALL = {CHECK_BOARD, CHANGE_TYPE, SHIFT_GEMS, CASCADE_DEPTH,
+                                                   PAINT, PAINT_CELLS, QUEUE_DEPTH, COMMAND_LATENCY,
+                                                   FRAME_TIMER_LAG, CLOCK_TIMER_LAG};
+
+    static{
+        if(ENABLED){
+            register();
+            startDump(Integer.getInteger("gem.metrics.dumpSecs", 10));
+        }
+    }
+
+    /**
+     * No instances; the metrics are static.
+     */
+    private GemMetrics(){
+    }
+
+    /**
+     * Records how late a repeating timer ticked: the time since its last tick beyond its
+     * delay.
+     * @param histogram histogram to record into
+     * @param lastTick System.nanoTime of the last tick, or 0 if the timer was just started
+     * @param now System.nanoTime of this tick
+     * @param delayMs delay of the timer in milliseconds
+     */
+    public static void recordLag(LatencyHistogram histogram, long lastTick, long now, int delayMs){
+        if(lastTick != 0){
+            histogram.record(now - lastTick - delayMs * 1000000L);
+        }
+    }
+
+    /**
+     * Registers every histogram with the platform MBean server.  A histogram already
+     * registered, e.g. by another class loader, is left as it is.
+     */
+    private static void register(){
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        for(LatencyHistogram histogram : ALL){
+            try{
+                ObjectName name = new ObjectName("gem:type=Histogram,name=" + histogram.getName());
+
+                if(!server.isRegistered(name)){
+                    server.registerMBean(histogram, name);
+                }
+            } catch(JMException ex){
+                System.err.println("Could not register metric " + histogram.getName() + ": " + ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Starts the daemon thread that prints the metrics periodically.
+     * @param seconds seconds between dumps, or 0 for no dump
+     */
+    private static void startDump(final int seconds){
+        Thread thread;
+
+        if(seconds <= 0){
+            return;
+        }
+        thread = new Thread(new Runnable(){
+            public void run(){
+                while(true){
+                    try{
+                        Thread.sleep(seconds * 1000L);
+                    } catch(InterruptedException ex){
+                        return;
+                    }
+                    System.err.print(dump());
+                }
+            }
+        }, "gem metrics");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Formats every histogram, one per line.
+     * @return text dump of the metrics
+     */
+    public static String dump(){
+        StringBuilder sb = new StringBuilder("metrics:\n");
+
+        for(LatencyHistogram histogram : ALL){
+            sb.append("  ").append(histogram).append('\n');
+        }
+        return sb.toString();
+    }
+}
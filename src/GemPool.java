@@ -0,0 +1,113 @@
+/**
+ * This class is a bounded pool of GemManager instances for callers that start and end
+ * games at high rates, like GemServer sessions and GemSim workers.  A game taken with
+ * acquire is restarted with GemManager.reset, so while the pool holds a manager big
+ * enough for the new board, starting a game allocates nothing.  Managers given back
+ * beyond the pool's capacity are dropped for the garbage collector.
+ *
+ * The pool is safe to share between threads; a manager taken from it belongs to one
+ * caller until it is released.
+ */
+public class GemPool{
+    // Instance Variables
+    private final GemManager[] free;
+    private final boolean stable;
+    private int numFree;
+    private long created, reused; // Managers made by acquire, and taken from the pool
+
+    /**
+     * Constructor for an empty pool.
+     * @param capacity most managers kept for reuse
+     * @param stable true if the pool's games are dealt stable
+     */
+    public GemPool(int capacity, boolean stable){
+        free = new GemManager[capacity];
+        this.stable = stable;
+    }
+
+    /**
+     * Starts a game, on a pooled manager if there is one.  A manager that can hold the
+     * board without growing is preferred, the most recently released first.
+     * @param rows num rows for board
+     * @param cols num cols for board
+     * @param symb num symbols to be used on board
+     * @param randSeed constant for random num generator
+     * @return manager with a newly dealt board, the same as a new GemManager would deal
+     */
+    public GemManager acquire(int rows, int cols, int symb, long randSeed){
+        GemManager game = take(rows, cols);
+
+        if(game == null){
+            return new GemManager(rows, cols, symb, randSeed, stable);
+        }
+        game.reset(rows, cols, symb, randSeed);
+        return game;
+    }
+
+    /**
+     * Removes a manager from the pool, counting whether one had to be made instead.
+     * @param rows num rows for board
+     * @param cols num cols for board
+     * @return pooled manager, or null if the pool is empty
+     */
+    private synchronized GemManager take(int rows, int cols){
+        GemManager game;
+        int pick = numFree - 1;
+
+        if(numFree == 0){
+            created++;
+            return null;
+        }
+        for(int i = numFree - 1; i >= 0; i--){
+            if(free[i].canHold(rows, cols)){
+                pick = i;
+                break;
+            }
+        }
+        game = free[pick];
+        free[pick] = free[--numFree];
+        free[numFree] = null;
+        reused++;
+        return game;
+    }
+
+    /**
+     * Gives a manager back once its game has ended.  The caller must not use it again.
+     * @param game manager to pool
+     * @return true if it was kept, false if the pool was full
+     */
+    public synchronized boolean release(GemManager game){
+        if(game.isStable() != stable){
+            throw new IllegalArgumentException("Pool deals " + (stable ? "stable" : "random") + " boards");
+        }
+        if(numFree == free.length){
+            return false;
+        }
+        free[numFree++] = game;
+        return true;
+    }
+
+    /**
+     * Get method for the number of managers waiting for reuse.
+     * @return pooled managers
+     */
+    public synchronized int getNumFree(){
+        return numFree;
+    }
+
+    /**
+     * Get method for the number of managers acquire had to make.
+     * @return managers made because the pool was empty
+     */
+    public synchronized long getCreated(){
+        return created;
+    }
+
+    /**
+     * Get method for the number of games started on a pooled manager.
+     * @return acquires served from the pool
+     */
+    public synchronized long getReused(){
+        return reused;
+    }
+}
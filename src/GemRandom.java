@@ -0,0 +1,128 @@
+/**
+ * This class is the random num generator of a GemManager.  It draws exactly the same
+ * numbers as java.util.Random from the same seed, so seeded boards and recorded games
+ * keep their Gems, but its whole state is one plain long.  That lets a board snapshot
+ * save and restore the generator with the Gems, lets a stream be jumped ahead without
+ * drawing, and lets a stream be split into an independent one for exploring a branch.
+ * It is not thread safe; each board owns its generator.
+ */
+public class GemRandom{
+    // Instance Variables
+    private static final long MULTIPLIER = 0x5DEECE66DL;
+    private static final long ADDEND = 0xBL;
+    private static final long MASK = (1L << 48) - 1;
+
+    private long state; // 48-bit linear congruential state, as in java.util.Random
+
+    /**
+     * Constructor for a generator seeded like new java.util.Random(seed).
+     * @param seed initial seed
+     */
+    public GemRandom(long seed){
+        setSeed(seed);
+    }
+
+    /**
+     * Reseeds the generator like java.util.Random.setSeed.
+     * @param seed new seed
+     */
+    public void setSeed(long seed){
+        state = (seed ^ MULTIPLIER) & MASK;
+    }
+
+    /**
+     * Get method for the internal state, for saving it in a snapshot.
+     * @return state of the generator
+     */
+    public long getState(){
+        return state;
+    }
+
+    /**
+     * Set method for the internal state, for restoring a snapshot.  Unlike setSeed the
+     * value is used as it is.
+     * @param state state returned by getState
+     */
+    public void setState(long state){
+        this.state = state & MASK;
+    }
+
+    /**
+     * Steps the generator once.
+     * @param bits number of random bits wanted, at most 32
+     * @return next random bits
+     */
+    private int next(int bits){
+        state = (state * MULTIPLIER + ADDEND) & MASK;
+        return (int) (state >>> (48 - bits));
+    }
+
+    /**
+     * Draws a uniform int below a bound, exactly as java.util.Random.nextInt(bound).
+     * @param bound exclusive upper bound, positive
+     * @return random int from 0 to bound - 1
+     */
+    public int nextInt(int bound){
+        int r = next(31);
+        int m = bound - 1;
+
+        if((bound & m) == 0){
+            return (int) ((bound * (long) r) >> 31);
+        }
+        for(int u = r; u - (r = u % bound) + m < 0; u = next(31)){
+            // Rejects the top partial range so every value is equally likely
+        }
+        return r;
+    }
+
+    /**
+     * Draws a uniform long, exactly as java.util.Random.nextLong().
+     * @return random long
+     */
+    public long nextLong(){
+        return ((long) next(32) << 32) + next(32);
+    }
+
+    /**
+     * Jumps ahead as if next had been called a number of times, in O(log steps).  A
+     * nextInt with a power of two bound, or without rejection, takes one step.
+     * @param steps number of steps to skip
+     */
+    public void advance(long steps){
+        long mul = 1, add = 0;
+        long stepMul = MULTIPLIER, stepAdd = ADDEND;
+
+        while(steps > 0){
+            if((steps & 1) != 0){
+                mul *= stepMul;
+                add = add * stepMul + stepAdd;
+            }
+            stepAdd *= stepMul + 1;
+            stepMul *= stepMul;
+            steps >>>= 1;
+        }
+        state = (state * mul + add) & MASK;
+    }
+
+    /**
+     * Splits off a new generator whose numbers are unrelated to this one's.  This
+     * generator takes one long from its own stream to seed the new one, so splitting is
+     * deterministic.
+     * @return new generator
+     */
+    public GemRandom split(){
+        return new GemRandom(mix(nextLong()));
+    }
+
+    /**
+     * Scrambles a seed into another, the SplitMix64 finalizer, so that nearby seeds give
+     * unrelated streams.
+     * @param z seed
+     * @return well mixed seed
+     */
+    static long mix(long z){
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,425 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class is a headless server that hosts one game per connection, so many remote
+ * players share one JVM.  Each session is served by its own thread, blocking on its
+ * socket: a virtual thread when the JVM has them (Java 21 and later, found by
+ * reflection so the code still builds on older JDKs), otherwise a platform thread with
+ * a small stack.  A session holds its GemManager and MoveFinder and a 256-byte line
+ * buffer, and deals stable boards, so an idle session costs a few kilobytes.  A new
+ * game in a session restarts its manager, and managers of ended sessions go to a
+ * GemPool for the next sessions, so starting games under churn makes little garbage.
+ *
+ * The protocol is one ASCII line per request and one per reply:
+ *   START rows cols symbols [seed]  STARTED rows cols symbols [DEAD]
+ *   SWAP x1 y1 x2 y2                MOVED depth moveScore totalScore reshuffled(0|1) [DEAD]
+ *                                   or NOMATCH if the swap makes no match
+ *   HINT                            HINT x1 y1 x2 y2, or HINT NONE on a dead board
+ *   BOARD                           BOARD followed by one digit per cell, row by row
+ *   STATS                           STATS sessions moves heapKB
+ *   QUIT                            BYE, then the server closes the connection
+ * A request that cannot be served gets ERR and a message, and the session goes on.
+ * DEAD marks a board where no swap makes a match even after reshuffling, as small
+ * boards can be; every SWAP on it gets NOMATCH until the next START.
+ *
+ * Usage: java GemServer [--port P] [--max-cells N]
+ * The server listens on the loopback interface only.  GemLoad drives it with many
+ * concurrent sessions.
+ */
+public class GemServer{
+    // Instance Variables
+    public static final int DEFAULT_PORT = 7457;
+    private static final int LINE_MAX = 256; // Longest request line accepted
+    private static final int PLATFORM_STACK = 256 * 1024; // Stack size of fallback session threads
+    private static final int POOL_GAMES = 256; // Managers of ended sessions kept for new ones
+
+    private final ServerSocket server;
+    private final ExecutorService sessions;
+    private final int maxCells;
+    private final AtomicInteger open = new AtomicInteger();
+    private final AtomicLong moves = new AtomicLong();
+    private final GemPool games = new GemPool(POOL_GAMES, true);
+
+    /**
+     * Constructor that opens the listening socket.
+     * @param port port to listen on, or 0 for any free port
+     * @param maxCells largest board a session may start, in cells
+     * @throws IOException if the port cannot be opened
+     */
+    public GemServer(int port, int maxCells) throws IOException{
+        server = new ServerSocket(port, 4096, InetAddress.getLoopbackAddress());
+        sessions = newSessionExecutor("gem session");
+        this.maxCells = maxCells;
+    }
+
+    /**
+     * Creates an executor that runs each task on a thread of its own: a virtual thread
+     * if the JVM supports them, else a daemon platform thread with a small stack.
+     * @param name name of the platform threads
+     * @return executor for blocking per-connection tasks
+     */
+    public static ExecutorService newSessionExecutor(final String name){
+        try{
+            Method virtual = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+
+            return (ExecutorService) virtual.invoke(null);
+        } catch(ReflectiveOperationException ex){
+            return Executors.newCachedThreadPool(new ThreadFactory(){
+                public Thread newThread(Runnable r){
+                    Thread thread = new Thread(null, r, name, PLATFORM_STACK);
+
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+    }
+
+    /**
+     * Checks whether session threads are virtual.
+     * @return true on JVMs with virtual threads
+     */
+    public static boolean hasVirtualThreads(){
+        try{
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch(NoSuchMethodException ex){
+            return false;
+        }
+    }
+
+    /**
+     * Get method for the port the server listens on.
+     * @return local port
+     */
+    public int getPort(){
+        return server.getLocalPort();
+    }
+
+    /**
+     * Accepts connections until the server socket is closed, starting a session for each.
+     */
+    public void serve(){
+        while(!server.isClosed()){
+            try{
+                final Socket socket = server.accept();
+
+                socket.setTcpNoDelay(true);
+                sessions.execute(new Runnable(){
+                    public void run(){
+                        new Session(socket).run();
+                    }
+                });
+            } catch(IOException ex){
+                if(!server.isClosed()){
+                    System.err.println("Accept failed: " + ex.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops accepting connections.  Open sessions run until their players quit.
+     */
+    public void close(){
+        try{
+            server.close();
+        } catch(IOException ex){
+            System.err.println("Close failed: " + ex.getMessage());
+        }
+        sessions.shutdown();
+    }
+
+    /**
+     * One player's connection and game.  Requests are served in order on the session's
+     * own thread, so the game needs no locking.
+     */
+    private class Session{
+        // Instance Variables
+        private final Socket socket;
+        private final byte[] line = new byte[LINE_MAX]; // Request line being read
+        private final byte[] in = new byte[LINE_MAX]; // Bytes read but not yet consumed
+        private int inPos, inEnd;
+        private InputStream input;
+        private OutputStream output;
+        private GemManager game;
+        private MoveFinder finder;
+        private long score;
+
+        /**
+         * Constructor for a session on an accepted socket.
+         * @param socket connection to the player
+         */
+        public Session(Socket socket){
+            this.socket = socket;
+        }
+
+        /**
+         * Serves requests until the player quits or disconnects.
+         */
+        public void run(){
+            String request;
+
+            open.incrementAndGet();
+            try{
+                input = socket.getInputStream();
+                output = socket.getOutputStream();
+                while((request = readLine()) != null){
+                    if(!reply(request)){
+                        break;
+                    }
+                }
+            } catch(IOException ex){
+                // The player went away; nothing to answer
+            } finally{
+                open.decrementAndGet();
+                if(game != null){
+                    games.release(game);
+                    game = null;
+                }
+                try{
+                    socket.close();
+                } catch(IOException ex){
+                    // Already closed
+                }
+            }
+        }
+
+        /**
+         * Serves one request and writes its reply.
+         * @param request request line without its line end
+         * @return false once the session should end
+         * @throws IOException if the reply cannot be written
+         */
+        private boolean reply(String request) throws IOException{
+            String[] words = request.trim().split(" +");
+            String command = words[0].toUpperCase();
+
+            try{
+                if(command.equals("START")){
+                    write(start(words));
+                } else if(command.equals("SWAP")){
+                    write(swap(words));
+                } else if(command.equals("HINT")){
+                    write(hint());
+                } else if(command.equals("BOARD")){
+                    write(board());
+                } else if(command.equals("STATS")){
+                    Runtime runtime = Runtime.getRuntime();
+
+                    write("STATS " + open.get() + " " + moves.get() + " "
+                          + (runtime.totalMemory() - runtime.freeMemory()) / 1024);
+                } else if(command.equals("QUIT")){
+                    write("BYE");
+                    return false;
+                } else {
+                    write("ERR unknown command " + words[0]);
+                }
+            } catch(IllegalArgumentException | IllegalStateException ex){
+                write("ERR " + ex.getMessage());
+            }
+            return true;
+        }
+
+        /**
+         * Starts a new game, replacing any game in progress on the same manager.
+         * @param words START, rows, cols, symbols and an optional seed
+         * @return reply line
+         */
+        private String start(String[] words){
+            int rows, cols, symb;
+            long seed;
+
+            if(words.length < 4){
+                throw new IllegalArgumentException("usage: START rows cols symbols [seed]");
+            }
+            rows = Integer.parseInt(words[1]);
+            cols = Integer.parseInt(words[2]);
+            symb = Integer.parseInt(words[3]);
+            seed = words.length > 4 ? Long.parseLong(words[4]) : System.nanoTime();
+            if(rows < 3 || cols < 3 || (long) rows * cols > maxCells || symb < 3 || symb > 8){
+                throw new IllegalArgumentException("board must be at least 3x3, at most " + maxCells
+                                                   + " cells, with 3 to 8 symbols");
+            }
+            if(game == null){
+                game = games.acquire(rows, cols, symb, seed);
+            } else {
+                game.reset(rows, cols, symb, seed);
+            }
+            game.cascade(); // Only boards that cannot be dealt stable hold matches
+            if(finder == null){
+                finder = new MoveFinder(game);
+            } else {
+                finder.reset(game);
+            }
+            score = 0;
+            return "STARTED " + rows + " " + cols + " " + symb
+                   + (finder.hasMoves() || finder.reshuffle() ? "" : " DEAD");
+        }
+
+        /**
+         * Plays a swap if it makes a match, resolving its whole cascade.
+         * @param words SWAP and the coordinates of both Gems
+         * @return reply line
+         */
+        private String swap(String[] words){
+            int x1, y1, x2, y2, moveScore;
+            boolean reshuffled, dead = false;
+
+            checkStarted();
+            if(words.length != 5){
+                throw new IllegalArgumentException("usage: SWAP x1 y1 x2 y2");
+            }
+            x1 = Integer.parseInt(words[1]);
+            y1 = Integer.parseInt(words[2]);
+            x2 = Integer.parseInt(words[3]);
+            y2 = Integer.parseInt(words[4]);
+            if(!game.isInBoard(x1, y1) || !game.isInBoard(x2, y2) || !finder.isLegal(x1, y1, x2, y2)){
+                return "NOMATCH";
+            }
+            game.swapGems(x1, y1, x2, y2);
+            moveScore = game.cascade();
+            score += moveScore;
+            finder.update();
+            reshuffled = !finder.hasMoves();
+            if(reshuffled){
+                dead = !finder.reshuffle();
+            }
+            moves.incrementAndGet();
+            return "MOVED " + game.getCascadeDepth() + " " + moveScore + " " + score + " " + (reshuffled ? 1 : 0)
+                + (dead ? " DEAD" : "");
+        }
+
+        /**
+         * Finds a swap that makes a match.
+         * @return reply line naming the swap, or HINT NONE if the board is dead
+         */
+        private String hint(){
+            int move;
+
+            checkStarted();
+            move = finder.hint();
+            if(move == Move.NONE){
+                return "HINT NONE";
+            }
+            return "HINT " + Move.x1(move, game.getNumCols()) + " " + Move.y1(move, game.getNumCols()) + " "
+                + Move.x2(move, game.getNumCols()) + " " + Move.y2(move, game.getNumCols());
+        }
+
+        /**
+         * Lists the board's types.
+         * @return reply line with one digit per cell, row by row
+         */
+        private String board(){
+            StringBuilder sb;
+
+            checkStarted();
+            sb = new StringBuilder(6 + game.getNumRows() * game.getNumCols());
+            sb.append("BOARD ");
+            for(int y = 0; y < game.getNumRows(); y++){
+                for(int x = 0; x < game.getNumCols(); x++){
+                    sb.append((char) ('0' + game.getType(x, y)));
+                }
+            }
+            return sb.toString();
+        }
+
+        /**
+         * Rejects game commands before START.
+         */
+        private void checkStarted(){
+            if(game == null){
+                throw new IllegalStateException("no game, send START first");
+            }
+        }
+
+        /**
+         * Reads one request line from the socket.  Lines longer than LINE_MAX are cut.
+         * @return line without its line end, or null at the end of the stream
+         * @throws IOException if reading fails
+         */
+        private String readLine() throws IOException{
+            int length = 0;
+            byte b;
+
+            while(true){
+                if(inPos == inEnd){
+                    inEnd = input.read(in, 0, in.length);
+                    inPos = 0;
+                    if(inEnd <= 0){
+                        inEnd = 0;
+                        return length > 0 ? new String(line, 0, length, StandardCharsets.US_ASCII) : null;
+                    }
+                }
+                b = in[inPos++];
+                if(b == '\n'){
+                    if(length > 0 && line[length - 1] == '\r'){
+                        length--;
+                    }
+                    return new String(line, 0, length, StandardCharsets.US_ASCII);
+                }
+                if(length < line.length){
+                    line[length++] = b;
+                }
+            }
+        }
+
+        /**
+         * Writes one reply line.
+         * @param reply reply without its line end
+         * @throws IOException if writing fails
+         */
+        private void write(String reply) throws IOException{
+            byte[] bytes = (reply + "\n").getBytes(StandardCharsets.US_ASCII);
+
+            output.write(bytes);
+            output.flush();
+        }
+    }
+
+    public static void main(String[] args){
+        int port = DEFAULT_PORT, maxCells = 256 * 256;
+        GemServer server;
+
+        try{
+            for(int i = 0; i < args.length; i++){
+                String arg = args[i];
+                String value = args[++i];
+
+                if(arg.equals("--port")){
+                    port = Integer.parseInt(value);
+                } else if(arg.equals("--max-cells")){
+                    maxCells = Integer.parseInt(value);
+                } else {
+                    throw new IllegalArgumentException("Unknown option: " + arg);
+                }
+            }
+        } catch(RuntimeException ex){
+            System.err.println(ex.getMessage());
+            System.err.println("Usage: java GemServer [--port P] [--max-cells N]");
+            System.exit(1);
+        }
+        try{
+            server = new GemServer(port, maxCells);
+        } catch(IOException ex){
+            System.err.println("Could not listen on port " + port + ": " + ex.getMessage());
+            System.exit(1);
+            return;
+        }
+        System.err.println("Listening on port " + server.getPort() + " with "
+                           + (hasVirtualThreads() ? "virtual" : "platform") + " session threads");
+        server.serve();
+    }
+}
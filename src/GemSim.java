@@ -0,0 +1,354 @@
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class plays Gem Match games headlessly on every core to measure engine throughput
+ * and to compare board sizes and symbol counts.  Each game is seeded with the next value
+ * of a seed range and dealt at random, not stable as GemEngine deals, so the matches of
+ * the deal are cascaded away unscored before play.  It is then played for a fixed
+ * number of moves chosen by a MovePolicy.  Moves score with the cascade multiplier used
+ * during play.
+ *
+ * Usage: java GemSim [--games N] [--moves M] [--rows R[-R2]] [--cols C[-C2]]
+ *                    [--symbols S[-S2]] [--seed FIRST] [--threads T] [--policy NAME] [--verify]
+ *                    [--archive NAME]
+ * Ranges run every combination and print one report per board configuration.  The
+ * policies are random (any adjacent swap), legal (a random matching swap) and bot (a
+ * GemBot looking two moves ahead).  With --verify every game is also recorded with
+ * ReplayRecorder, and the logs are replayed afterwards to check their scores.  With
+ * --archive the logs are appended to that ReplayArchive.
+ */
+public class GemSim{
+    private static final int MAX_DEPTH = 16; // Deeper cascades share the last histogram bucket
+    private static final int CHECKPOINT_EVERY = 10; // Moves between score checkpoints of recorded logs
+    private static final int BOT_DEPTH = 2, BOT_SAMPLES = 4, BOT_BUDGET_MS = 100; // Settings of the bot policy
+
+    public static void main(String[] args){
+        int games = 10000, moves = 100, threads = Runtime.getRuntime().availableProcessors();
+        int[] rows = {8, 8}, cols = {8, 8}, symbs = {3, 3};
+        long seed = 0;
+        String policy = "random";
+        boolean verify = false;
+        String archive = null;
+
+        try{
+            for(int i = 0; i < args.length; i++){
+                String arg = args[i];
+
+                if(arg.equals("--verify")){
+                    verify = true;
+                    continue;
+                }
+                String value = args[++i];
+                if(arg.equals("--games")){
+                    games = Integer.parseInt(value);
+                } else if(arg.equals("--moves")){
+                    moves = Integer.parseInt(value);
+                } else if(arg.equals("--rows")){
+                    rows = range(value);
+                } else if(arg.equals("--cols")){
+                    cols = range(value);
+                } else if(arg.equals("--symbols")){
+                    symbs = range(value);
+                } else if(arg.equals("--seed")){
+                    seed = Long.parseLong(value);
+                } else if(arg.equals("--threads")){
+                    threads = Integer.parseInt(value);
+                } else if(arg.equals("--policy")){
+                    policy = value;
+                } else if(arg.equals("--archive")){
+                    archive = value;
+                } else {
+                    throw new IllegalArgumentException("Unknown option: " + arg);
+                }
+            }
+            policy(policy);
+        } catch(RuntimeException ex){
+            System.err.println(ex.getMessage());
+            System.err.println("Usage: java GemSim [--games N] [--moves M] [--rows R[-R2]] [--cols C[-C2]]"
+                + " [--symbols S[-S2]] [--seed FIRST] [--threads T] [--policy random|legal|bot] [--verify] [--archive NAME]");
+            System.exit(1);
+        }
+
+        for(int r = rows[0]; r <= rows[1]; r++){
+            for(int c = cols[0]; c <= cols[1]; c++){
+                for(int s = symbs[0]; s <= symbs[1]; s++){
+                    simulate(r, c, s, games, moves, seed, threads, policy, verify, archive);
+                }
+            }
+        }
+    }
+
+    /**
+     * Parses a single value or an inclusive "low-high" range.
+     * @param value command line value
+     * @return two element array of low and high
+     */
+    private static int[] range(String value){
+        int dash = value.indexOf('-');
+
+        if(dash < 0){
+            int n = Integer.parseInt(value);
+            return new int[]{n, n};
+        }
+        return new int[]{Integer.parseInt(value.substring(0, dash)), Integer.parseInt(value.substring(dash + 1))};
+    }
+
+    /**
+     * Looks up a move policy by name.
+     * @param name policy name from the command line
+     * @return MovePolicy for that name
+     */
+    static MovePolicy policy(String name){
+        if(name.equals("random")){
+            return MovePolicy.RANDOM;
+        } else if(name.equals("legal")){
+            return new LegalPolicy(null);
+        } else if(name.equals("bot")){
+            return new LegalPolicy(new GemBot(BOT_DEPTH, BOT_SAMPLES, BOT_BUDGET_MS));
+        }
+        throw new IllegalArgumentException("Unknown policy: " + name);
+    }
+
+    /**
+     * Plays a batch of games of one board configuration and prints a report.
+     * @param rows num rows for board
+     * @param cols num cols for board
+     * @param symb num symbols to be used on board
+     * @param games number of games to play
+     * @param moves number of moves per game
+     * @param firstSeed seed of the first game, later games use the following seeds
+     * @param threads number of worker threads
+     * @param policyName name of the move policy
+     * @param verify true to record every game and replay the logs afterwards
+     * @param archive archive to append every game's log to, or null
+     */
+    private static void simulate(final int rows, final int cols, final int symb, final int games,
+                                 final int moves, final long firstSeed, int threads, final String policyName,
+                                 boolean verify, String archive){
+        final AtomicInteger next = new AtomicInteger();
+        final int[] scores = new int[games]; // Each game writes only its own slot
+        final byte[][] logs = verify || archive != null ? new byte[games][] : null;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Stats>> workers = new ArrayList<Future<Stats>>();
+        Stats total = new Stats();
+        long start = System.nanoTime();
+
+        for(int t = 0; t < threads; t++){
+            workers.add(pool.submit(new Callable<Stats>(){
+                public Stats call(){
+                    Stats stats = new Stats();
+                    MovePolicy policy = policy(policyName);
+                    GemManager game = null; // Restarted for each game the worker plays
+                    int g;
+
+                    while((g = next.getAndIncrement()) < games){
+                        if(logs == null){
+                            if(game == null){
+                                game = new GemManager(rows, cols, symb, firstSeed + g);
+                            } else {
+                                game.reset(rows, cols, symb, firstSeed + g);
+                            }
+                            scores[g] = play(game, firstSeed + g, moves, policy, stats);
+                        } else {
+                            ReplayRecorder recorder = new ReplayRecorder(rows, cols, symb, firstSeed + g,
+                                                                         CHECKPOINT_EVERY);
+                            scores[g] = play(recorder.getGame(), firstSeed + g, moves, policy, stats);
+                            logs[g] = recorder.finish();
+                        }
+                        stats.games++;
+                    }
+                    return stats;
+                }
+            }));
+        }
+        try{
+            for(Future<Stats> worker : workers){
+                total.add(worker.get());
+            }
+        } catch(InterruptedException | ExecutionException ex){
+            throw new RuntimeException(ex);
+        } finally{
+            pool.shutdown();
+        }
+        report(rows, cols, symb, threads, policyName, total, scores, System.nanoTime() - start);
+        if(verify){
+            verify(logs, scores);
+        }
+        if(archive != null){
+            try(ReplayArchive out = new ReplayArchive(Paths.get(archive))){
+                for(byte[] log : logs){
+                    out.append(log);
+                }
+                System.out.printf("  archive: %s holds %d games%n", archive, out.size());
+            } catch(IOException ex){
+                throw new RuntimeException(ex);
+            }
+        }
+    }
+    
+    /**
+     * Replays every log on this thread and checks it against the score of its game.
+     * @param logs log of every game
+     * @param scores final score of every game
+     */
+    private static void verify(byte[][] logs, int[] scores){
+        long moves = 0, bytes = 0, start = System.nanoTime();
+        int failed = 0;
+        double secs;
+        
+        for(int g = 0; g < logs.length; g++){
+            Replay replay = new Replay(logs[g]);
+            
+            try{
+                if(replay.verify() != scores[g]){
+                    failed++;
+                }
+            } catch(IllegalArgumentException ex){
+                failed++;
+            }
+            moves += replay.getNumMoves();
+            bytes += logs[g].length;
+        }
+        secs = (System.nanoTime() - start) / 1e9;
+        System.out.printf("  replay: %d logs of %.1f bytes/move, %d failed, %.0f moves/sec on one thread%n",
+                          logs.length, (double) bytes / Math.max(moves, 1), failed, moves / secs);
+    }
+
+    /**
+     * Plays one game.
+     * @param game new game with a random deal, which may hold matches
+     * @param seed seed of this game
+     * @param moves number of moves to play
+     * @param policy chooses each move
+     * @param stats counters to add this game's moves and cascades to
+     * @return final score of the game
+     */
+    static int play(GemManager game, long seed, int moves, MovePolicy policy, Stats stats){
+        Random rand = new Random(~seed);
+        int score = 0, move;
+
+        game.cascade(); // Removes the random deal's matches, unscored
+        for(int m = 0; m < moves; m++){
+            move = policy.chooseMove(game, rand);
+            if(move == Move.NONE){
+                break;
+            }
+            game.swapGems(move);
+            score += game.cascade();
+            stats.moves++;
+            stats.depth[Math.min(game.getCascadeDepth(), MAX_DEPTH)]++;
+        }
+        return score;
+    }
+
+    /**
+     * Prints throughput, the cascade depth histogram and the score distribution.
+     * @param rows num rows for board
+     * @param cols num cols for board
+     * @param symb num symbols used on board
+     * @param threads number of worker threads
+     * @param policy name of the move policy
+     * @param stats merged counters of every worker
+     * @param scores final score of every game
+     * @param nanos elapsed wall time
+     */
+    private static void report(int rows, int cols, int symb, int threads, String policy, Stats stats,
+                               int[] scores, long nanos){
+        double secs = nanos / 1e9;
+        long sum = 0;
+
+        System.out.printf("%dx%d, %d symbols, policy %s, %d threads%n", cols, rows, symb, policy, threads);
+        System.out.printf("  %d games, %d moves in %.2f s: %.0f games/sec, %.0f moves/sec%n",
+                          stats.games, stats.moves, secs, stats.games / secs, stats.moves / secs);
+        System.out.print("  cascade depth:");
+        for(int d = 0; d <= MAX_DEPTH; d++){
+            if(stats.depth[d] > 0){
+                System.out.printf(" %s%d=%.2f%%", d == MAX_DEPTH ? ">=" : "", d, 100.0 * stats.depth[d] / stats.moves);
+            }
+        }
+        System.out.println();
+
+        scores = scores.clone();
+        Arrays.sort(scores);
+        for(int s : scores){
+            sum += s;
+        }
+        if(scores.length > 0){
+            System.out.printf("  score: min %d, p10 %d, p50 %d, p90 %d, p99 %d, max %d, mean %.1f%n",
+                              scores[0], percentile(scores, 10), percentile(scores, 50), percentile(scores, 90),
+                              percentile(scores, 99), scores[scores.length - 1], (double) sum / scores.length);
+        }
+    }
+
+    /**
+     * Nearest-rank percentile of sorted values.
+     * @param sorted values in ascending order
+     * @param p percentile from 0 to 100
+     * @return value at that percentile
+     */
+    private static int percentile(int[] sorted, int p){
+        int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+
+        return sorted[Math.max(rank - 1, 0)];
+    }
+
+    /**
+     * Policy that plays a matching swap, reshuffling dead boards the way GemGUI does.  The
+     * swap is chosen uniformly at random, or by a GemBot when one is given.  Each worker
+     * has its own instance, which follows one game at a time.
+     */
+    static class LegalPolicy implements MovePolicy{
+        private MoveFinder moves;
+        private GemBot bot;
+        
+        /**
+         * Constructor for the policy.
+         * @param bot bot choosing among the matching swaps, or null to choose at random
+         */
+        public LegalPolicy(GemBot bot){
+            this.bot = bot;
+        }
+        
+        /**
+         * Chooses a matching swap, ending the game if none can be found.
+         * @param game settled board to move on
+         * @param rand random source for this game
+         * @return encoded move, or Move.NONE
+         */
+        public int chooseMove(GemManager game, Random rand){
+            if(moves == null || moves.getGame() != game){
+                moves = new MoveFinder(game);
+            } else {
+                moves.update();
+            }
+            if(!moves.hasMoves() && !moves.reshuffle()){
+                return Move.NONE;
+            }
+            return bot != null ? bot.chooseMove(game, rand) : moves.randomMove(rand);
+        }
+    }
+    
+    /**
+     * Counters kept by one worker thread and merged at the end of a batch.
+     */
+    static class Stats{
+        long games, moves;
+        long[] depth = new long[MAX_DEPTH + 1];
+
+        /**
+         * Adds another worker's counters to these.
+         * @param other counters to add
+         */
+        void add(Stats other){
+            games += other.games;
+            moves += other.moves;
+            for(int d = 0; d <= MAX_DEPTH; d++){
+                depth[d] += other.depth[d];
+            }
+        }
+    }
+}
@@ -1,64 +1,204 @@
 import java.awt.*;
 import java.awt.image.*;
 import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.CRC32;
 import javax.imageio.*;
 import javax.swing.*;
 
 /**
- * This class reads in a JPEG file that is a sprite sheet for all of the 
+ * This class reads in a JPEG file that is a sprite sheet for all of the
  * imported images necessary to create a full set of Gem types to use
  * with the GemGUI.  The JPEG itself is preplanned so as to know the exact
- * dimensions needed to pull each sub-image for each type.  Once the image 
+ * dimensions needed to pull each sub-image for each type.  Once the image
  * array is selected by the player, the matching image array is sent to the GUI.
+ *
+ * Nothing is decoded when the object is made.  preload starts decoding the sheet on a
+ * background thread, and getArray waits for it if needed and slices only the theme
+ * asked for, once.  When the system property gem.spriteCache names a directory, the
+ * decoded sheet is also kept there as raw pixels, keyed by a checksum of the JPEG, so
+ * later launches skip JPEG decoding.
  */
 public class ImageArrays{
     // Instance Variables
-    private BufferedImage image;
-    private BufferedImage[] animals,gems,mario,gems2;
-    
+    private static final String[] THEMES = {"animals", "gems", "mario", "gems 2"}; // Sheet rows, top to bottom
+    private static final int NUM_TYPES = 9;
+
+    private String imageName;
+    private FutureTask<BufferedImage> image; // Decoded sheet, or null if loading failed
+    private boolean started; // preload has started the loader thread
+    private Map<String, BufferedImage[]> arrays = new HashMap<String, BufferedImage[]>();
+
     /**
-     * Constructor for ImageArrays. Loads the JPEG from file, creates arrays
-     * of the proper length for the amount of types, then fills the arrays
-     * with sub-images of predetermined size.
+     * Constructor for ImageArrays.  Only remembers the file; the JPEG is loaded by
+     * preload or by the first getArray.
      * @param imageName String of file to be loaded
      */
     public ImageArrays(String imageName){
-        //ClassLoader so it'll work in my .jar
-        ClassLoader cl = getClass().getClassLoader();
-        InputStream in = cl.getResourceAsStream(imageName);
-        try{
-            image = ImageIO.read(in);
-            } catch (IOException ex){
-                System.err.println("Error loading: "+ imageName);
-        }
-        
-        animals = new BufferedImage[9];
-        gems = new BufferedImage[9];
-        mario = new BufferedImage[9];
-        gems2 = new BufferedImage[9];
-        
-        for(int i = 0; i <= 8; i++){
-            animals[i] = image.getSubimage(i * 80,0,75,75);
-            gems[i] = image.getSubimage(i * 80,80,75,75);
-            mario[i] = image.getSubimage(i * 80, 160, 75, 75);
-            gems2[i] = image.getSubimage(i * 80, 240, 75, 75);
+        this.imageName = imageName;
+        image = new FutureTask<BufferedImage>(new Callable<BufferedImage>(){
+            public BufferedImage call(){
+                return load();
+            }
+        });
+    }
+
+    /**
+     * Starts decoding the sheet on a background thread, e.g. while the player is still
+     * choosing a theme.  Calling it again does nothing.
+     */
+    public synchronized void preload(){
+        Thread loader;
+
+        if(!started){
+            started = true;
+            loader = new Thread(image, "sprite loader");
+            loader.setDaemon(true);
+            loader.start();
         }
     }
-    
+
     /**
      * This method returns the array that matches the String sent by the caller.
+     * Unknown names get the last theme.  Only a call made before the sheet is decoded
+     * waits, and it waits without holding this object's lock, so preload and calls for
+     * themes already sliced are never blocked behind the decode.
      * @param name String of array name
      * @return BufferedImage array that matches String name
      */
     public BufferedImage[] getArray(String name){
-        if(name.equals("animals")){
-            return animals;
-        } else if (name.equals("gems")){
-            return gems;
-        } else if(name.equals("mario")){
-            return mario;
-        } else {
-            return gems2;
+        BufferedImage[] array;
+        BufferedImage sheet;
+        int row = Math.max(Arrays.asList(THEMES).indexOf(name), 0);
+
+        synchronized(this){
+            array = arrays.get(name);
+        }
+        if(array != null){
+            return array;
+        }
+        if(row == 0 && !name.equals(THEMES[0])){
+            row = THEMES.length - 1;
+        }
+        image.run(); // Decodes here unless preload already did or is doing so
+        try{
+            sheet = image.get();
+        } catch(InterruptedException | ExecutionException ex){
+            sheet = null;
+        }
+        if(sheet == null){
+            throw new IllegalStateException("Error loading: " + imageName);
+        }
+
+        // Copies each sprite out of the sheet so it does not share the sheet's raster.
+        array = new BufferedImage[NUM_TYPES];
+        for(int i = 0; i < NUM_TYPES; i++){
+            array[i] = new BufferedImage(75, 75, BufferedImage.TYPE_INT_RGB);
+            Graphics g = array[i].getGraphics();
+            g.drawImage(sheet.getSubimage(i * 80, row * 80, 75, 75), 0, 0, null);
+            g.dispose();
+        }
+        synchronized(this){
+            if(arrays.containsKey(name)){ // Another thread sliced the same theme meanwhile
+                return arrays.get(name);
+            }
+            arrays.put(name, array);
+        }
+        return array;
+    }
+
+    /**
+     * Loads the sheet, from the raw cache when it holds this JPEG and otherwise by
+     * decoding the JPEG and filling the cache.
+     * @return decoded sheet, or null if it cannot be read
+     */
+    private BufferedImage load(){
+        //ClassLoader so it'll work in my .jar
+        ClassLoader cl = getClass().getClassLoader();
+        String cacheDir = System.getProperty("gem.spriteCache");
+        BufferedImage sheet = null;
+        byte[] jpeg;
+        Path raw = null;
+
+        try(InputStream in = cl.getResourceAsStream(imageName)){
+            if(in == null){
+                throw new FileNotFoundException(imageName);
+            }
+            jpeg = in.readAllBytes();
+        } catch (IOException ex){
+            System.err.println("Error loading: "+ imageName);
+            return null;
+        }
+
+        if(cacheDir != null){
+            CRC32 crc = new CRC32();
+            crc.update(jpeg);
+            raw = Paths.get(cacheDir, imageName + "-" + Long.toHexString(crc.getValue()) + ".raw");
+            try{
+                return readRaw(raw);
+            } catch(IOException ex){
+                // Not cached yet or unreadable, decode the JPEG instead
+            }
+        }
+        try{
+            sheet = ImageIO.read(new ByteArrayInputStream(jpeg));
+        } catch (IOException ex){
+            System.err.println("Error loading: "+ imageName);
+            return null;
+        }
+        if(raw != null && sheet != null){
+            try{
+                writeRaw(sheet, raw);
+            } catch(IOException ex){
+                System.err.println("Could not cache sprites: " + ex.getMessage());
+            }
+        }
+        return sheet;
+    }
+
+    /**
+     * Reads a sheet saved by writeRaw: width and height, then one RGB int per pixel.
+     * @param raw cache file
+     * @return sheet
+     * @throws IOException if the file is missing or damaged
+     */
+    private static BufferedImage readRaw(Path raw) throws IOException{
+        try(FileChannel in = FileChannel.open(raw, StandardOpenOption.READ)){
+            ByteBuffer buf = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            int width = buf.getInt(), height = buf.getInt();
+
+            if(width <= 0 || height <= 0 || buf.remaining() != 4L * width * height){
+                throw new IOException("Damaged sprite cache " + raw);
+            }
+            BufferedImage sheet = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            buf.asIntBuffer().get(((DataBufferInt) sheet.getRaster().getDataBuffer()).getData());
+            return sheet;
+        }
+    }
+
+    /**
+     * Saves a sheet as raw pixels, writing a temporary file first so a reader never
+     * sees half a file.  The temporary file is deleted if the write or the move fails.
+     * @param sheet decoded sheet
+     * @param raw cache file
+     * @throws IOException if writing fails
+     */
+    private static void writeRaw(BufferedImage sheet, Path raw) throws IOException{
+        int width = sheet.getWidth(), height = sheet.getHeight();
+        ByteBuffer buf = ByteBuffer.allocate(8 + 4 * width * height);
+        Path temp = Files.createTempFile(raw.getParent(), "sprites", ".tmp");
+
+        try{
+            buf.putInt(width).putInt(height);
+            buf.asIntBuffer().put(sheet.getRGB(0, 0, width, height, null, 0, width));
+            Files.write(temp, buf.array());
+            Files.move(temp, raw, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally{
+            Files.deleteIfExists(temp); // Gone already once moved
         }
-    } 
+    }
 }
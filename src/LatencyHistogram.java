@@ -0,0 +1,189 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class is a fixed-size histogram of non-negative values in the style of
+ * HdrHistogram: values below 32 have a bucket each, and every power of two above that
+ * is split into 32 buckets, so any value is kept to within about 3% in 1888 buckets
+ * whatever its range.  Recording is a few atomic adds with no allocation, safe from any
+ * number of threads, and reading gives the count, mean, maximum and percentiles while
+ * recording goes on.  It is registered with JMX by GemMetrics.
+ */
+public class LatencyHistogram implements LatencyHistogramMBean{
+    // Instance Variables
+    private static final int SUB_BITS = 5;
+    private static final int SUB = 1 << SUB_BITS; // Buckets per power of two
+    private static final int NUM_BUCKETS = (64 - SUB_BITS) * SUB;
+
+    private final String name;
+    private final boolean nanos; // Values are nanoseconds, reported in microseconds
+    private final AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Constructor for an empty histogram.
+     * @param name name shown in dumps and JMX
+     * @param nanos true if values are nanoseconds, false for plain counts
+     */
+    public LatencyHistogram(String name, boolean nanos){
+        this.name = name;
+        this.nanos = nanos;
+    }
+
+    /**
+     * Records one value.
+     * @param value value to record; negative values are recorded as 0
+     */
+    public void record(long value){
+        long seen;
+
+        value = Math.max(value, 0);
+        counts.incrementAndGet(bucket(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        seen = max.get();
+        while(value > seen && !max.compareAndSet(seen, value)){
+            seen = max.get();
+        }
+    }
+
+    /**
+     * Bucket holding a value.
+     * @param value non-negative value
+     * @return bucket index
+     */
+    private static int bucket(long value){
+        int e;
+
+        if(value < SUB){
+            return (int) value;
+        }
+        e = 63 - Long.numberOfLeadingZeros(value); // value is in [2^e, 2^(e+1))
+        return ((e - SUB_BITS + 1) << SUB_BITS) + (int) (value >>> (e - SUB_BITS)) - SUB;
+    }
+
+    /**
+     * Smallest value held by a bucket.
+     * @param bucket bucket index
+     * @return lowest value that falls in the bucket
+     */
+    private static long lowest(int bucket){
+        int b = bucket >>> SUB_BITS;
+
+        if(b == 0){
+            return bucket;
+        }
+        return (long) (SUB + (bucket & (SUB - 1))) << (b - 1);
+    }
+
+    /**
+     * Finds the value below which a fraction of the recorded values lie.
+     * @param fraction fraction from 0 to 1, e.g. 0.99
+     * @return highest value of the bucket holding that rank, in recorded units, or 0 if empty
+     */
+    public long valueAt(double fraction){
+        long total = count.get(), rank, seen = 0;
+
+        if(total == 0){
+            return 0;
+        }
+        rank = Math.max((long) Math.ceil(fraction * total), 1);
+        for(int i = 0; i < NUM_BUCKETS; i++){
+            seen += counts.get(i);
+            if(seen >= rank){
+                return Math.min(i + 1 < NUM_BUCKETS ? lowest(i + 1) - 1 : Long.MAX_VALUE, max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Get method for the name.
+     * @return name shown in dumps and JMX
+     */
+    public String getName(){
+        return name;
+    }
+
+    /**
+     * Get method for the number of values recorded.
+     * @return count since the last reset
+     */
+    public long getCount(){
+        return count.get();
+    }
+
+    /**
+     * Mean of the recorded values.
+     * @return mean in microseconds for times, or in plain units
+     */
+    public double getMean(){
+        long n = count.get();
+
+        return n == 0 ? 0 : scale(sum.get()) / n;
+    }
+
+    /**
+     * Largest recorded value.
+     * @return maximum in microseconds for times, or in plain units
+     */
+    public double getMax(){
+        return scale(max.get());
+    }
+
+    /**
+     * Median of the recorded values.
+     * @return 50th percentile in microseconds for times, or in plain units
+     */
+    public double getP50(){
+        return scale(valueAt(0.5));
+    }
+
+    /**
+     * 99th percentile of the recorded values.
+     * @return 99th percentile in microseconds for times, or in plain units
+     */
+    public double getP99(){
+        return scale(valueAt(0.99));
+    }
+
+    /**
+     * 99.9th percentile of the recorded values.
+     * @return 99.9th percentile in microseconds for times, or in plain units
+     */
+    public double getP999(){
+        return scale(valueAt(0.999));
+    }
+
+    /**
+     * Converts a recorded value to the reported unit.
+     * @param value recorded value
+     * @return microseconds for times, the value itself otherwise
+     */
+    private double scale(long value){
+        return nanos ? value / 1e3 : value;
+    }
+
+    /**
+     * Empties the histogram.  Values recorded during a reset may be partly lost.
+     */
+    public void reset(){
+        for(int i = 0; i < NUM_BUCKETS; i++){
+            counts.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    /**
+     * Formats the histogram as one line of a dump.
+     * @return name, count, mean, percentiles and maximum
+     */
+    public String toString(){
+        return String.format("%-14s n=%-9d mean=%-10.2f p50=%-10.2f p99=%-10.2f p99.9=%-10.2f max=%.2f%s",
+                             name, getCount(), getMean(), getP50(), getP99(), getP999(), getMax(), nanos ? " us" : "");
+    }
+}
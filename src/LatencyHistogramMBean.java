@@ -0,0 +1,46 @@
+/**
+ * This interface is the JMX view of a LatencyHistogram.  Times are reported in
+ * microseconds and counts in plain units.
+ */
+public interface LatencyHistogramMBean{
+    /**
+     * Get method for the number of values recorded.
+     * @return count since the last reset
+     */
+    long getCount();
+
+    /**
+     * Mean of the recorded values.
+     * @return mean
+     */
+    double getMean();
+
+    /**
+     * Largest recorded value.
+     * @return maximum
+     */
+    double getMax();
+
+    /**
+     * Median of the recorded values.
+     * @return 50th percentile
+     */
+    double getP50();
+
+    /**
+     * 99th percentile of the recorded values.
+     * @return 99th percentile
+     */
+    double getP99();
+
+    /**
+     * 99.9th percentile of the recorded values.
+     * @return 99.9th percentile
+     */
+    double getP999();
+
+    /**
+     * Empties the histogram.
+     */
+    void reset();
+}
@@ -0,0 +1,182 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * This class finds every Gem in a run of 3 or more on a whole board in one pass over
+ * its rows, for full checks such as settling a new or shuffled board.  It works SWAR
+ * style on the row-major bytes: eight cells are read as one long, XORed with the cells
+ * one to the right (or one row down), and the zero bytes of the result, the equal
+ * neighbours, are gathered into eight bits of a bitmap with a multiply.  A run of three
+ * starts where a cell equals its next two neighbours, so the run bits are the equal
+ * bits ANDed with themselves shifted by one, then spread over the three cells.
+ *
+ * Types must be below 128, so XORed bytes never carry into the next byte.
+ */
+public class MatchScanner{
+    // Instance Variables
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long LOW7 = 0x7F7F7F7F7F7F7F7FL; // Sets a byte's high bit when added unless the byte is 0
+    private static final long HIGH = 0x8080808080808080L;
+    private static final long GATHER = 0x0102040810204080L; // Moves bit 8k to bit 56 + k
+
+    private int numRows, numCols, rowWords;
+    private long[] matched; // Bit x of row y is word y * rowWords + (x >>> 6): cell is in a run
+    private long[] horizontal; // Equal-to-right bits of the row being scanned
+    private long[] below, belowNext; // Equal-to-below bits of the last two row pairs
+
+    /**
+     * Constructor for a scanner of boards of one size.
+     * @param numRows num rows of board
+     * @param numCols num cols of board
+     */
+    public MatchScanner(int numRows, int numCols){
+        this.numRows = numRows;
+        this.numCols = numCols;
+        rowWords = (numCols + 63) >>> 6;
+        matched = new long[numRows * rowWords];
+        horizontal = new long[rowWords];
+        below = new long[rowWords];
+        belowNext = new long[rowWords];
+    }
+
+    /**
+     * Marks every cell that is in a horizontal or vertical run of 3 or more.  Row y is
+     * compared with its right neighbours and with row y + 1, and the vertical runs
+     * starting at row y - 1 are marked once both pairs below it are known.
+     * @param cells row-major types, y * numCols + x
+     * @return number of marked cells
+     */
+    public int scan(byte[] cells){
+        long[] swap;
+        long run;
+        int count = 0;
+
+        Arrays.fill(matched, 0L);
+        Arrays.fill(below, 0L);
+        for(int y = 0; y < numRows; y++){
+            equalRight(cells, y * numCols, horizontal);
+            markRuns(horizontal, y * rowWords);
+            if(y < numRows - 1){
+                equalBelow(cells, y * numCols, belowNext);
+            } else {
+                Arrays.fill(belowNext, 0L);
+            }
+            if(y >= 1){
+                for(int w = 0; w < rowWords; w++){
+                    run = below[w] & belowNext[w]; // Rows y - 1, y and y + 1 match
+                    if(run != 0){
+                        matched[(y - 1) * rowWords + w] |= run;
+                        matched[y * rowWords + w] |= run;
+                        matched[(y + 1) * rowWords + w] |= run;
+                    }
+                }
+            }
+            swap = below;
+            below = belowNext;
+            belowNext = swap;
+        }
+        for(long word : matched){
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * Sets bit x of a row bitmap when cell x equals cell x + 1.
+     * @param cells row-major types
+     * @param row index of the row's first cell
+     * @param bits row bitmap to fill
+     */
+    private void equalRight(byte[] cells, int row, long[] bits){
+        int x = 0;
+
+        Arrays.fill(bits, 0L);
+        for(; x + 8 < numCols; x += 8){
+            bits[x >>> 6] |= equalBytes((long) LONGS.get(cells, row + x), (long) LONGS.get(cells, row + x + 1)) << (x & 63);
+        }
+        for(; x < numCols - 1; x++){
+            if(cells[row + x] == cells[row + x + 1]){
+                bits[x >>> 6] |= 1L << x;
+            }
+        }
+    }
+
+    /**
+     * Sets bit x of a row bitmap when cell x of a row equals cell x of the row below.
+     * @param cells row-major types
+     * @param row index of the upper row's first cell
+     * @param bits row bitmap to fill
+     */
+    private void equalBelow(byte[] cells, int row, long[] bits){
+        int x = 0;
+
+        Arrays.fill(bits, 0L);
+        for(; x + 8 <= numCols; x += 8){
+            bits[x >>> 6] |= equalBytes((long) LONGS.get(cells, row + x), (long) LONGS.get(cells, row + numCols + x)) << (x & 63);
+        }
+        for(; x < numCols; x++){
+            if(cells[row + x] == cells[row + numCols + x]){
+                bits[x >>> 6] |= 1L << x;
+            }
+        }
+    }
+
+    /**
+     * Compares eight pairs of bytes at once.
+     * @param a eight types, little-endian
+     * @param b eight types to compare with, little-endian
+     * @return bit k set when byte k of a equals byte k of b
+     */
+    private static long equalBytes(long a, long b){
+        long zero = ~((a ^ b) + LOW7) & HIGH; // High bit of each equal byte
+
+        return ((zero >>> 7) * GATHER) >>> 56;
+    }
+
+    /**
+     * Marks the cells of the horizontal runs of one row from its equal-to-right bits.  A
+     * run starts at x when x equals x + 1 and x + 1 equals x + 2, and covers x to x + 2.
+     * @param equal equal-to-right bits of the row
+     * @param at index of the row's first word in matched
+     */
+    private void markRuns(long[] equal, int at){
+        long start, carry = 0, next;
+
+        for(int w = 0; w < rowWords; w++){
+            next = w + 1 < rowWords ? equal[w + 1] : 0L;
+            start = equal[w] & (equal[w] >>> 1 | next << 63);
+            matched[at + w] |= start | start << 1 | start << 2 | carry;
+            carry = start >>> 63 | start >>> 62;
+        }
+    }
+
+    /**
+     * Checks whether the last scan marked a cell.
+     * @param x x coordinate of cell
+     * @param y y coordinate of cell
+     * @return true if the cell is in a run of 3 or more
+     */
+    public boolean isMatched(int x, int y){
+        return (matched[y * rowWords + (x >>> 6)] & (1L << x)) != 0;
+    }
+
+    /**
+     * Get method for one word of the last scan's bitmap.
+     * @param y row of cells
+     * @param w word of the row, covering columns 64 * w to 64 * w + 63
+     * @return marked cells of those columns, bit k for column 64 * w + k
+     */
+    public long getWord(int y, int w){
+        return matched[y * rowWords + w];
+    }
+
+    /**
+     * Get method for the number of bitmap words per row.
+     * @return words covering one row of cells
+     */
+    public int getRowWords(){
+        return rowWords;
+    }
+}
@@ -0,0 +1,100 @@
+/**
+ * This class packs a swap of two adjacent Gems into a single int so that policies,
+ * simulations and logs can pass moves around without allocating.  A move is the
+ * row-major index of the upper or left Gem shifted left by one, with the low bit set
+ * when the swap is with the Gem below rather than the Gem to the right.
+ */
+public final class Move{
+    public static final int NONE = -1; // No move available
+
+    private Move(){
+    }
+
+    /**
+     * Encodes a swap of two adjacent Gems.
+     * @param x1 x coordinate of first Gem
+     * @param y1 y coordinate of first Gem
+     * @param x2 x coordinate of second Gem
+     * @param y2 y coordinate of second Gem
+     * @param numCols number of columns in board
+     * @return encoded move
+     */
+    public static int encode(int x1, int y1, int x2, int y2, int numCols){
+        int x = Math.min(x1, x2);
+        int y = Math.min(y1, y2);
+
+        return (y * numCols + x) << 1 | (x1 == x2 ? 1 : 0);
+    }
+
+    /**
+     * Encodes a swap of a Gem with its right or lower neighbour.
+     * @param x x coordinate of upper or left Gem
+     * @param y y coordinate of upper or left Gem
+     * @param down true to swap with the Gem below, false for the Gem to the right
+     * @param numCols number of columns in board
+     * @return encoded move
+     */
+    public static int of(int x, int y, boolean down, int numCols){
+        return (y * numCols + x) << 1 | (down ? 1 : 0);
+    }
+
+    /**
+     * Checks whether a move swaps with the Gem below.
+     * @param move encoded move
+     * @return true for a vertical swap
+     */
+    public static boolean isDown(int move){
+        return (move & 1) != 0;
+    }
+
+    /**
+     * Get method for the x coordinate of the upper or left Gem.
+     * @param move encoded move
+     * @param numCols number of columns in board
+     * @return x coordinate of first Gem
+     */
+    public static int x1(int move, int numCols){
+        return (move >>> 1) % numCols;
+    }
+
+    /**
+     * Get method for the y coordinate of the upper or left Gem.
+     * @param move encoded move
+     * @param numCols number of columns in board
+     * @return y coordinate of first Gem
+     */
+    public static int y1(int move, int numCols){
+        return (move >>> 1) / numCols;
+    }
+
+    /**
+     * Get method for the x coordinate of the lower or right Gem.
+     * @param move encoded move
+     * @param numCols number of columns in board
+     * @return x coordinate of second Gem
+     */
+    public static int x2(int move, int numCols){
+        return x1(move, numCols) + (isDown(move) ? 0 : 1);
+    }
+
+    /**
+     * Get method for the y coordinate of the lower or right Gem.
+     * @param move encoded move
+     * @param numCols number of columns in board
+     * @return y coordinate of second Gem
+     */
+    public static int y2(int move, int numCols){
+        return y1(move, numCols) + (isDown(move) ? 1 : 0);
+    }
+
+    /**
+     * Simple description of a move for testing purposes
+     * @param move encoded move
+     * @param numCols number of columns in board
+     * @return String of both coordinates
+     */
+    public static String toString(int move, int numCols){
+        return "(" + x1(move, numCols) + "," + y1(move, numCols) + ")-("
+            + x2(move, numCols) + "," + y2(move, numCols) + ")";
+    }
+}
@@ -0,0 +1,210 @@
+import java.util.Random;
+
+/**
+ * This class keeps the set of swaps that make a match on a GemManager board.  The full
+ * set is built once; after that, update() rechecks only the moves near the cells the
+ * manager reports as changed, using GemManager.isMatchingSwap instead of swapping and
+ * checking the board.  It is used for hints, for rejecting swaps that make no match
+ * before they are animated and for reshuffling boards with no moves left.
+ */
+public class MoveFinder{
+    // Instance Variables
+    private static final int MAX_SHUFFLES = 100; // Reshuffles tried before refilling the board
+
+    private GemManager game;
+    private int numRows, numCols;
+    private CellSet moves; // Matching swaps, indexed by their Move encoding
+    private CellSet pending; // Row-major cells whose right and down moves need rechecking
+
+    /**
+     * Constructor that finds every matching swap on the board.
+     * @param game board to track
+     */
+    public MoveFinder(GemManager game){
+        this.game = game;
+        numRows = game.getNumRows();
+        numCols = game.getNumCols();
+        moves = new CellSet(numRows * numCols * 2);
+        pending = new CellSet(numRows * numCols);
+
+        rebuild();
+    }
+
+    /**
+     * Get method for the tracked board.
+     * @return GemManager whose moves are tracked
+     */
+    public GemManager getGame(){
+        return game;
+    }
+
+    /**
+     * Rechecks every move on the board and empties the manager's changed cells.
+     */
+    public void rebuild(){
+        moves.clear();
+        for(int y = 0; y < numRows; y++){
+            for(int x = 0; x < numCols; x++){
+                recheck(x, y);
+            }
+        }
+        game.clearChangedCells();
+    }
+
+    /**
+     * Starts tracking a new game, e.g. one started by GemManager.reset or taken from a
+     * GemPool, reusing the move sets when they can hold its size.
+     * @param game board to track
+     */
+    public void reset(GemManager game){
+        this.game = game;
+        numRows = game.getNumRows();
+        numCols = game.getNumCols();
+        moves.resize(numRows * numCols * 2);
+        pending.resize(numRows * numCols);
+
+        rebuild();
+    }
+
+    /**
+     * Rechecks the moves that can be affected by the cells changed since the last
+     * update, then empties the manager's changed cells.
+     */
+    public void update(){
+        markChanged();
+        for(int i = pending.nextSetBit(0); i >= 0; i = pending.nextSetBit(i + 1)){
+            recheck(i % numCols, i / numCols);
+        }
+        pending.clear();
+    }
+
+    /**
+     * Notes the moves that can be affected by the cells changed so far and empties the
+     * manager's changed cells, leaving the rechecking to the next update.  Callers that
+     * consume the changed cells between updates, like GemGUI repainting each stage of a
+     * cascade, call this first.  A swap looks at most two Gems past either end, so only
+     * moves starting within three columns left, two right, three rows up and two rows
+     * down of a changed cell need checking.  Changed cells come in column order, so each
+     * vertical run of them marks one rectangle.
+     */
+    public void markChanged(){
+        CellSet changed = game.getChangedCells();
+        int cx, y1, y2, x1, x2;
+        int i = changed.nextSetBit(0);
+
+        while(i >= 0){
+            cx = i / numRows;
+            y1 = y2 = i % numRows;
+            i = changed.nextSetBit(i + 1);
+            while(y2 + 1 < numRows && i == cx * numRows + y2 + 1){
+                y2++;
+                i = changed.nextSetBit(i + 1);
+            }
+            x1 = Math.max(cx - 3, 0);
+            x2 = Math.min(cx + 2, numCols - 1);
+            for(int y = Math.max(y1 - 3, 0); y <= Math.min(y2 + 2, numRows - 1); y++){
+                pending.addRange(y * numCols + x1, y * numCols + x2);
+            }
+        }
+        game.clearChangedCells();
+    }
+
+    /**
+     * Rechecks the swaps of one Gem with its right and lower neighbours.
+     * @param x x coordinate of Gem
+     * @param y y coordinate of Gem
+     */
+    private void recheck(int x, int y){
+        int move = Move.of(x, y, false, numCols);
+
+        if(x + 1 < numCols && game.isMatchingSwap(x, y, x + 1, y)){
+            moves.add(move);
+        } else {
+            moves.remove(move);
+        }
+        if(y + 1 < numRows && game.isMatchingSwap(x, y, x, y + 1)){
+            moves.add(move | 1);
+        } else {
+            moves.remove(move | 1);
+        }
+    }
+
+    /**
+     * Get method for the number of matching swaps.
+     * @return number of moves that make a match
+     */
+    public int getCount(){
+        return moves.size();
+    }
+
+    /**
+     * Checks whether any swap makes a match.
+     * @return false if the board is dead
+     */
+    public boolean hasMoves(){
+        return !moves.isEmpty();
+    }
+
+    /**
+     * Checks whether an encoded move makes a match.
+     * @param move encoded move
+     * @return true if the move makes a match
+     */
+    public boolean isLegal(int move){
+        return moves.contains(move);
+    }
+
+    /**
+     * Checks whether swapping two Gems makes a match.
+     * @param x1 x coordinate of first Gem
+     * @param y1 y coordinate of first Gem
+     * @param x2 x coordinate of second Gem
+     * @param y2 y coordinate of second Gem
+     * @return true if the Gems are adjacent and the swap makes a match
+     */
+    public boolean isLegal(int x1, int y1, int x2, int y2){
+        if(Math.abs(x1 - x2) + Math.abs(y1 - y2) != 1){
+            return false;
+        }
+        return moves.contains(Move.encode(x1, y1, x2, y2, numCols));
+    }
+
+    /**
+     * Finds a move to suggest to the player.
+     * @return first matching move in board order, or Move.NONE if the board is dead
+     */
+    public int hint(){
+        return moves.nextSetBit(0);
+    }
+
+    /**
+     * Picks a matching move uniformly at random.
+     * @param rand random source
+     * @return encoded move, or Move.NONE if the board is dead
+     */
+    public int randomMove(Random rand){
+        if(moves.isEmpty()){
+            return Move.NONE;
+        }
+        return moves.select(rand.nextInt(moves.size()));
+    }
+
+    /**
+     * Shuffles and settles the board until a matching move exists.  If that keeps failing,
+     * as it does when the mix of Gems cannot make a match, the board is refilled with
+     * new random Gems instead.
+     * @return false if no board with a move was found, e.g. on boards too small to match
+     */
+    public boolean reshuffle(){
+        for(int i = 0; !hasMoves() && i < 2 * MAX_SHUFFLES; i++){
+            if(i < MAX_SHUFFLES){
+                game.shuffle();
+            } else {
+                game.initBoard();
+            }
+            game.cascade();
+            rebuild();
+        }
+        return hasMoves();
+    }
+}
@@ -0,0 +1,43 @@
+import java.util.Random;
+
+/**
+ * This interface lets a headless player choose the next swap on a settled board.
+ * Moves are encoded with Move.  A simulation thread owns its GemManager and Random,
+ * so implementations may keep per-thread state but must not share mutable state
+ * between threads.
+ */
+public interface MovePolicy{
+
+    /**
+     * Chooses the next swap.
+     * @param game settled board to move on
+     * @param rand random source for this game
+     * @return encoded move, or Move.NONE to end the game
+     */
+    int chooseMove(GemManager game, Random rand);
+
+    /**
+     * Policy that swaps a uniformly random Gem with a random right or lower neighbour,
+     * whether or not the swap makes a match, as a player clicking blindly would.
+     */
+    MovePolicy RANDOM = new MovePolicy(){
+        public int chooseMove(GemManager game, Random rand){
+            int rows = game.getNumRows();
+            int cols = game.getNumCols();
+            boolean down;
+
+            if(rows < 2 && cols < 2){
+                return Move.NONE;
+            }
+            while(true){
+                down = rand.nextBoolean();
+                if(down && rows > 1){
+                    return Move.of(rand.nextInt(cols), rand.nextInt(rows - 1), true, cols);
+                }
+                if(!down && cols > 1){
+                    return Move.of(rand.nextInt(cols - 1), rand.nextInt(rows), false, cols);
+                }
+            }
+        }
+    };
+}
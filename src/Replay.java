@@ -0,0 +1,227 @@
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
+
+/**
+ * This class replays a game logged by ReplayRecorder without a GUI and checks that it
+ * scores what the log says.  The game is rebuilt from the header's settings and seed,
+ * settled, and every logged swap is played and cascaded, so a log whose moves or score
+ * were changed fails verification.  Logs are read from a ByteBuffer, so they can come
+ * straight from a byte array or a slice of a mapped archive file.
+ *
+ * Usage: java Replay FILE...
+ * Verifies each log file and prints the moves replayed per second.
+ */
+public class Replay{
+    // Record codes and header constants shared with ReplayRecorder.
+    static final int MAGIC = 0x47454D52; // "GEMR"
+    static final int VERSION = 2; // Version 1 logs have no stable flag and are read as random boards
+    static final int END = 0, SHUFFLE = 1, REFILL = 2, CHECKPOINT = 3;
+
+    // Instance Variables
+    private ByteBuffer log;
+    private int rows, cols, symbols, numMoves;
+    private long seed, score;
+    private boolean stable;
+    private GemManager game;
+
+    /**
+     * Constructor that reads the header of a log.
+     * @param log buffer positioned at the start of a log; it is read up to the end record
+     */
+    public Replay(ByteBuffer log){
+        int magic = 0, version;
+
+        this.log = log;
+        for(int b = 0; b < 4; b++){
+            magic = magic << 8 | (log.get() & 0xFF);
+        }
+        version = log.get();
+        if(magic != MAGIC || version < 1 || version > VERSION){
+            throw new IllegalArgumentException("Not a Gem Match replay log");
+        }
+        rows = (int) readVarint(log);
+        cols = (int) readVarint(log);
+        symbols = (int) readVarint(log);
+        stable = version >= 2 && log.get() != 0;
+        seed = log.getLong();
+    }
+
+    /**
+     * Constructor that reads the header of a log held in an array.
+     * @param log complete log
+     */
+    public Replay(byte[] log){
+        this(ByteBuffer.wrap(log));
+    }
+
+    /**
+     * Plays the logged game, checking every checkpoint and the final score.  A log can be
+     * verified once.
+     * @return final score
+     * @throws IllegalArgumentException if the log is damaged or a score does not match
+     */
+    public long verify(){
+        game = new GemManager(rows, cols, symbols, seed, stable);
+        game.cascade(); // Settle the new board, unscored as in GemEngine.newGame
+        score = 0;
+        numMoves = 0;
+        try{
+            return play();
+        } catch(BufferUnderflowException ex){
+            throw new IllegalArgumentException("Log ends early after move " + numMoves);
+        }
+    }
+
+    /**
+     * Plays the records up to the end record.
+     * @return final score
+     */
+    private long play(){
+        long record, logged;
+
+        while(true){
+            record = readVarint(log);
+            if((record & 1) != 0){
+                game.swapGems(checkMove(record >>> 1));
+                score += game.cascade();
+                numMoves++;
+            } else if(record >>> 1 == SHUFFLE){
+                game.shuffle();
+                game.cascade();
+            } else if(record >>> 1 == REFILL){
+                game.initBoard();
+                game.cascade();
+            } else if(record >>> 1 == CHECKPOINT || record >>> 1 == END){
+                logged = readVarint(log);
+                if(logged != score){
+                    throw new IllegalArgumentException("Score mismatch after move " + numMoves
+                                                       + ": log has " + logged + ", replay scored " + score);
+                }
+                if(record >>> 1 == END){
+                    return score;
+                }
+            } else {
+                throw new IllegalArgumentException("Unknown record " + record + " after move " + numMoves);
+            }
+        }
+    }
+
+    /**
+     * Checks that a logged move lies on the board.
+     * @param move encoded move
+     * @return the move
+     */
+    private int checkMove(long move){
+        int x = (int) (move >>> 1) % cols;
+        int y = (int) (move >>> 1) / cols;
+
+        if(move >= 2L * rows * cols || (Move.isDown((int) move) ? y + 1 >= rows : x + 1 >= cols)){
+            throw new IllegalArgumentException("Move off the board after move " + numMoves);
+        }
+        return (int) move;
+    }
+
+    /**
+     * Get method for numRows.
+     * @return number of rows in the logged board
+     */
+    public int getRows(){
+        return rows;
+    }
+
+    /**
+     * Get method for numCols.
+     * @return number of columns in the logged board
+     */
+    public int getCols(){
+        return cols;
+    }
+
+    /**
+     * Get method for numSymbols.
+     * @return number of symbols in the logged board
+     */
+    public int getSymbols(){
+        return symbols;
+    }
+
+    /**
+     * Checks whether the logged game dealt stable boards.
+     * @return true if boards were dealt with no matches, see GemManager.isStable
+     */
+    public boolean isStable(){
+        return stable;
+    }
+
+    /**
+     * Get method for the seed.
+     * @return seed of the logged game
+     */
+    public long getSeed(){
+        return seed;
+    }
+
+    /**
+     * Get method for the number of moves replayed.
+     * @return number of swaps played by verify
+     */
+    public int getNumMoves(){
+        return numMoves;
+    }
+
+    /**
+     * Get method for the replayed game.
+     * @return board as it stands after verify, or null before
+     */
+    public GemManager getGame(){
+        return game;
+    }
+
+    /**
+     * Reads an unsigned LEB128 varint.
+     * @param in buffer to read from
+     * @return value read
+     */
+    static long readVarint(ByteBuffer in){
+        long value = 0;
+        int b;
+
+        for(int shift = 0; shift < 64; shift += 7){
+            b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if(b >= 0){
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Varint too long");
+    }
+
+    public static void main(String[] args){
+        long moves = 0, start = System.nanoTime();
+        int failed = 0;
+
+        if(args.length == 0){
+            System.err.println("Usage: java Replay FILE...");
+            System.exit(1);
+        }
+        for(String file : args){
+            try{
+                Replay replay = new Replay(Files.readAllBytes(Paths.get(file)));
+                long score = replay.verify();
+
+                moves += replay.getNumMoves();
+                System.out.printf("%s: %dx%d, %d symbols, seed %d, %d moves, score %d%n", file, replay.getCols(),
+                                  replay.getRows(), replay.getSymbols(), replay.getSeed(), replay.getNumMoves(), score);
+            } catch(IOException | RuntimeException ex){
+                failed++;
+                System.out.println(file + ": FAILED " + ex.getMessage());
+            }
+        }
+        double secs = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d logs, %d failed, %d moves in %.2f s: %.0f moves/sec%n",
+                          args.length, failed, moves, secs, moves / secs);
+        System.exit(failed > 0 ? 1 : 0);
+    }
+}
@@ -0,0 +1,278 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class is an append-only archive of replay logs written by ReplayRecorder.  The
+ * logs are stored back to back in NAME.dat, and NAME.idx holds a fixed-width entry per
+ * game, its offset (8 bytes) and length (4 bytes), so game id n is found at byte 12n of
+ * the index without scanning.  An append writes the log before its index entry, so a
+ * crash can only leave an unindexed tail of data, which the next append overwrites.
+ *
+ * Logs are read through MappedByteBuffer windows of up to 1 GB and handed out as
+ * read-only slices of the mapping, so Replay decodes straight from the page cache
+ * without copying the log into a heap array.
+ *
+ * Usage: java ReplayArchive NAME [--append FILE...] [--verify [FROM [TO]]] [--threads T]
+ * Appends log files, then verifies a range of games on T threads and prints the rate.
+ */
+public class ReplayArchive implements Closeable{
+    // Instance Variables
+    private static final int ENTRY_BYTES = 12;
+    private static final long MAX_WINDOW = 1L << 30; // Largest mapping made at once
+
+    private FileChannel data, index;
+    private long count; // Number of indexed games
+    private long dataEnd; // End of the last indexed log
+    private ByteBuffer entry = ByteBuffer.allocate(ENTRY_BYTES);
+    private MappedByteBuffer window; // Data mapping kept by get for nearby games
+    private long windowStart;
+
+    /**
+     * Constructor that opens an archive, creating its files if they do not exist.
+     * @param base path of the archive without the .dat and .idx extensions
+     * @throws IOException if the files cannot be opened
+     */
+    public ReplayArchive(Path base) throws IOException{
+        data = FileChannel.open(Paths.get(base + ".dat"), StandardOpenOption.CREATE,
+                                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        index = FileChannel.open(Paths.get(base + ".idx"), StandardOpenOption.CREATE,
+                                 StandardOpenOption.READ, StandardOpenOption.WRITE);
+        count = index.size() / ENTRY_BYTES; // A partly written last entry is ignored
+        dataEnd = 0;
+        if(count > 0){
+            readEntry(count - 1);
+            dataEnd = entry.getLong(0) + entry.getInt(8);
+        }
+    }
+
+    /**
+     * Get method for the number of games.
+     * @return number of games in the archive
+     */
+    public synchronized long size(){
+        return count;
+    }
+
+    /**
+     * Appends a log to the archive.
+     * @param log complete log from ReplayRecorder.finish
+     * @return id of the new game
+     * @throws IOException if writing fails
+     */
+    public synchronized long append(byte[] log) throws IOException{
+        ByteBuffer buf = ByteBuffer.wrap(log);
+
+        while(buf.hasRemaining()){
+            data.write(buf, dataEnd + buf.position());
+        }
+        entry.clear();
+        entry.putLong(dataEnd).putInt(log.length).flip();
+        while(entry.hasRemaining()){
+            index.write(entry, count * ENTRY_BYTES + entry.position());
+        }
+        dataEnd += log.length;
+        return count++;
+    }
+
+    /**
+     * Forces appended games to the storage device.
+     * @throws IOException if syncing fails
+     */
+    public void sync() throws IOException{
+        data.force(false);
+        index.force(false);
+    }
+
+    /**
+     * Opens one game by id.  The mapping made for it is kept, so opening games stored
+     * near each other maps the file only once.
+     * @param id game id
+     * @return read-only view of the game's log
+     * @throws IOException if reading fails
+     */
+    public synchronized ByteBuffer get(long id) throws IOException{
+        long offset;
+        int length;
+
+        if(id < 0 || id >= count){
+            throw new IndexOutOfBoundsException("No game " + id);
+        }
+        readEntry(id);
+        offset = entry.getLong(0);
+        length = entry.getInt(8);
+        if(window == null || offset < windowStart || offset + length > windowStart + window.capacity()){
+            windowStart = offset;
+            window = data.map(FileChannel.MapMode.READ_ONLY, offset, Math.max(length, Math.min(MAX_WINDOW, dataEnd - offset)));
+        }
+        return window.slice((int) (offset - windowStart), length).asReadOnlyBuffer();
+    }
+
+    /**
+     * Hands every game of a range to a visitor in id order.  The index and data are
+     * mapped in windows local to this call, so several threads may visit ranges of the
+     * same archive at once.
+     * @param from first game id
+     * @param to game id after the last one
+     * @param visitor called with each game's id and a read-only view of its log
+     * @throws IOException if reading fails
+     */
+    public void forEach(long from, long to, Visitor visitor) throws IOException{
+        MappedByteBuffer entries = null, logs = null;
+        long entriesStart = 0, logsStart = 0, offset, end;
+        int length, e;
+
+        synchronized(this){
+            end = Math.min(to, count);
+        }
+        for(long id = Math.max(from, 0); id < end; id++){
+            if(entries == null || id * ENTRY_BYTES >= entriesStart + entries.capacity()){
+                entriesStart = id * ENTRY_BYTES;
+                entries = index.map(FileChannel.MapMode.READ_ONLY, entriesStart,
+                                    Math.min(MAX_WINDOW / ENTRY_BYTES, end - id) * ENTRY_BYTES);
+            }
+            e = (int) (id * ENTRY_BYTES - entriesStart);
+            offset = entries.getLong(e);
+            length = entries.getInt(e + 8);
+            if(logs == null || offset + length > logsStart + logs.capacity()){
+                logsStart = offset;
+                logs = data.map(FileChannel.MapMode.READ_ONLY, offset, Math.max(length, Math.min(MAX_WINDOW, dataEnd - offset)));
+            }
+            visitor.visit(id, logs.slice((int) (offset - logsStart), length).asReadOnlyBuffer());
+        }
+    }
+
+    /**
+     * Reads the index entry of a game into entry.
+     * @param id game id
+     * @throws IOException if reading fails
+     */
+    private void readEntry(long id) throws IOException{
+        entry.clear();
+        while(entry.hasRemaining()){
+            if(index.read(entry, id * ENTRY_BYTES + entry.position()) < 0){
+                throw new EOFException("Index ends early at game " + id);
+            }
+        }
+    }
+
+    /**
+     * Closes the archive files.  Buffers handed out stay readable until collected.
+     * @throws IOException if closing fails
+     */
+    public void close() throws IOException{
+        data.close();
+        index.close();
+    }
+
+    /**
+     * Receives the games of a range.
+     */
+    public interface Visitor{
+        /**
+         * Called once per game.
+         * @param id game id
+         * @param log read-only view of the game's log, positioned at its start
+         */
+        void visit(long id, ByteBuffer log);
+    }
+
+    public static void main(String[] args) throws Exception{
+        List<String> files = new ArrayList<String>();
+        long from = 0, to = Long.MAX_VALUE;
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean verify = false;
+
+        if(args.length == 0){
+            System.err.println("Usage: java ReplayArchive NAME [--append FILE...] [--verify [FROM [TO]]] [--threads T]");
+            System.exit(1);
+        }
+        for(int i = 1; i < args.length; i++){
+            if(args[i].equals("--append")){
+                while(i + 1 < args.length && !args[i + 1].startsWith("--")){
+                    files.add(args[++i]);
+                }
+            } else if(args[i].equals("--verify")){
+                verify = true;
+                if(i + 1 < args.length && !args[i + 1].startsWith("--")){
+                    from = Long.parseLong(args[++i]);
+                }
+                if(i + 1 < args.length && !args[i + 1].startsWith("--")){
+                    to = Long.parseLong(args[++i]);
+                }
+            } else if(args[i].equals("--threads")){
+                threads = Integer.parseInt(args[++i]);
+            } else {
+                System.err.println("Unknown option: " + args[i]);
+                System.exit(1);
+            }
+        }
+
+        try(ReplayArchive archive = new ReplayArchive(Paths.get(args[0]))){
+            for(String file : files){
+                archive.append(Files.readAllBytes(Paths.get(file)));
+            }
+            System.out.printf("%s: %d games%n", args[0], archive.size());
+            if(verify){
+                System.exit(audit(archive, from, Math.min(to, archive.size()), threads) > 0 ? 1 : 0);
+            }
+        }
+    }
+
+    /**
+     * Verifies a range of games, splitting it into one stripe of ids per thread.
+     * @param archive archive to read
+     * @param from first game id
+     * @param to game id after the last one
+     * @param threads number of worker threads
+     * @return number of games that failed
+     * @throws Exception if reading fails
+     */
+    private static long audit(final ReplayArchive archive, long from, long to, int threads) throws Exception{
+        final AtomicLong moves = new AtomicLong(), failed = new AtomicLong();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Void>> workers = new ArrayList<Future<Void>>();
+        long step = Math.max((to - from + threads - 1) / threads, 1);
+        long start = System.nanoTime();
+
+        for(long lo = from; lo < to; lo += step){
+            final long a = lo, b = Math.min(lo + step, to);
+            workers.add(pool.submit(new Callable<Void>(){
+                public Void call() throws IOException{
+                    archive.forEach(a, b, new Visitor(){
+                        public void visit(long id, ByteBuffer log){
+                            Replay replay = null;
+
+                            try{
+                                replay = new Replay(log);
+                                replay.verify();
+                            } catch(RuntimeException ex){
+                                failed.incrementAndGet();
+                                System.out.println("game " + id + ": FAILED " + ex.getMessage());
+                            }
+                            if(replay != null){
+                                moves.addAndGet(replay.getNumMoves());
+                            }
+                        }
+                    });
+                    return null;
+                }
+            }));
+        }
+        try{
+            for(Future<Void> worker : workers){
+                worker.get();
+            }
+        } finally{
+            pool.shutdown();
+        }
+        double secs = (System.nanoTime() - start) / 1e9;
+        System.out.printf("verified %d games, %d failed, %d moves in %.2f s: %.0f games/sec, %.0f moves/sec%n",
+                          Math.max(to - from, 0), failed.get(), moves.get(), secs, (to - from) / secs, moves.get() / secs);
+        return failed.get();
+    }
+}
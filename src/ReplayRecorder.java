@@ -0,0 +1,199 @@
+import java.util.Arrays;
+
+/**
+ * This class records a game in the compact binary format read by Replay.  A game is
+ * fully determined by its board settings, its seed and the moves played, so the log is
+ * a header followed by one varint per swap, about one or two bytes a move.  The
+ * recorder creates the game itself and is told by GemManager of every swap, every
+ * shuffle or refill of the whole board and every scored removal, so the log cannot
+ * miss a move made by any caller.
+ *
+ * The score is kept the way GemGUI and GemManager.cascade score a move: each removal
+ * step after a swap scores its turnScore times the step number.  Removals after a
+ * shuffle or refill, like those settling a new board, are not scored.  Every
+ * checkpointEvery moves the score so far is written as a checkpoint, so a replay that
+ * goes wrong is caught at the first bad stretch rather than at the end.
+ *
+ * Format, all integers unsigned LEB128 varints unless noted:
+ *   header   magic "GEMR" (4 bytes), version (1 byte), rows, cols, symbols,
+ *            stable (1 byte, 1 if boards are dealt stable), seed (8 bytes, big-endian)
+ *   records  move << 1 | 1                  a swap, in the Move encoding
+ *            Replay.SHUFFLE << 1            GemManager.shuffle
+ *            Replay.REFILL << 1             GemManager.initBoard
+ *            Replay.CHECKPOINT << 1, score  score after the moves so far
+ *            Replay.END << 1, score         end of game and final score
+ */
+public class ReplayRecorder{
+    // Instance Variables
+    private GemManager game;
+    private byte[] log;
+    private int length, checkpointEvery, numMoves, multiplier;
+    private long score;
+    private boolean scoring; // Removals score only after a swap, not after a shuffle or refill
+    private boolean finished;
+
+    /**
+     * Constructor that creates a new game of random boards and starts its log.  The game
+     * is not settled; callers cascade it before play, as Replay does for a new game.
+     * @param rows num rows for board
+     * @param cols num cols for board
+     * @param symb num symbols to be used on board
+     * @param randSeed constant for random num generator
+     * @param checkpointEvery number of moves between score checkpoints, or 0 for none
+     */
+    public ReplayRecorder(int rows, int cols, int symb, long randSeed, int checkpointEvery){
+        this(rows, cols, symb, randSeed, false, checkpointEvery);
+    }
+
+    /**
+     * Constructor that creates a new game, choosing how its boards are dealt, and starts
+     * its log.
+     * @param rows num rows for board
+     * @param cols num cols for board
+     * @param symb num symbols to be used on board
+     * @param randSeed constant for random num generator
+     * @param stable true to deal boards with no matches and a move, see GemManager
+     * @param checkpointEvery number of moves between score checkpoints, or 0 for none
+     */
+    public ReplayRecorder(int rows, int cols, int symb, long randSeed, boolean stable, int checkpointEvery){
+        this.checkpointEvery = checkpointEvery;
+        log = new byte[64];
+        length = 0;
+
+        for(int b = 0; b < 4; b++){
+            writeByte(Replay.MAGIC >>> (24 - 8 * b));
+        }
+        writeByte(Replay.VERSION);
+        writeVarint(rows);
+        writeVarint(cols);
+        writeVarint(symb);
+        writeByte(stable ? 1 : 0);
+        for(int b = 0; b < 8; b++){
+            writeByte((int) (randSeed >>> (56 - 8 * b)));
+        }
+
+        game = new GemManager(rows, cols, symb, randSeed, stable);
+        game.setRecorder(this);
+    }
+
+    /**
+     * Get method for the recorded game.
+     * @return GemManager whose moves are recorded
+     */
+    public GemManager getGame(){
+        return game;
+    }
+
+    /**
+     * Get method for the score so far.
+     * @return total score of the moves recorded
+     */
+    public long getScore(){
+        return score;
+    }
+
+    /**
+     * Get method for the number of moves.
+     * @return number of swaps recorded
+     */
+    public int getNumMoves(){
+        return numMoves;
+    }
+
+    /**
+     * Records a swap, writing a checkpoint first when one is due.
+     * @param x1 x coordinate of first Gem
+     * @param y1 y coordinate of first Gem
+     * @param x2 x coordinate of second Gem
+     * @param y2 y coordinate of second Gem
+     */
+    void swap(int x1, int y1, int x2, int y2){
+        if(Math.abs(x1 - x2) + Math.abs(y1 - y2) != 1){
+            throw new IllegalArgumentException("Only swaps of adjacent Gems can be recorded");
+        }
+        checkOpen();
+        if(checkpointEvery > 0 && numMoves > 0 && numMoves % checkpointEvery == 0){
+            writeVarint(Replay.CHECKPOINT << 1);
+            writeVarint(score);
+        }
+        writeVarint((long) Move.encode(x1, y1, x2, y2, game.getNumCols()) << 1 | 1);
+        numMoves++;
+        multiplier = 0;
+        scoring = true;
+    }
+
+    /**
+     * Records a shuffle of the board.
+     */
+    void shuffle(){
+        checkOpen();
+        writeVarint(Replay.SHUFFLE << 1);
+        scoring = false;
+    }
+
+    /**
+     * Records a refill of the whole board.
+     */
+    void refill(){
+        checkOpen();
+        writeVarint(Replay.REFILL << 1);
+        scoring = false;
+    }
+
+    /**
+     * Adds a removal step to the score.
+     * @param turnScore score of the Gems removed in this step
+     */
+    void removed(int turnScore){
+        if(scoring){
+            multiplier++;
+            score += (long) turnScore * multiplier;
+        }
+    }
+
+    /**
+     * Ends the log with the final score and detaches the recorder from the game.
+     * @return the complete log
+     */
+    public byte[] finish(){
+        checkOpen();
+        writeVarint(Replay.END << 1);
+        writeVarint(score);
+        finished = true;
+        game.setRecorder(null);
+        return Arrays.copyOf(log, length);
+    }
+
+    /**
+     * Makes sure nothing is recorded after finish.
+     */
+    private void checkOpen(){
+        if(finished){
+            throw new IllegalStateException("Replay already finished");
+        }
+    }
+
+    /**
+     * Appends one byte, growing the log when full.
+     * @param b byte to append, low 8 bits
+     */
+    private void writeByte(int b){
+        if(length == log.length){
+            log = Arrays.copyOf(log, log.length * 2);
+        }
+        log[length++] = (byte) b;
+    }
+
+    /**
+     * Appends an unsigned LEB128 varint: 7 bits a byte, low bits first, high bit set on
+     * every byte but the last.
+     * @param value non-negative value to append
+     */
+    private void writeVarint(long value){
+        while((value & ~0x7FL) != 0){
+            writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        writeByte((int) value);
+    }
+}
@@ -8,12 +8,16 @@ import java.awt.event.MouseAdapter;
  * customization for the GameBoard in GemGUI.  It consists of arrays of the
  * proper type for the selections that are being made. The JComboBox and
  * JLabel of its description are added to a JPanel to easily create one
- * single object in GameBoard.
+ * single object in GameBoard.  The row and column boxes are editable, so any
+ * board size from 5 to 4096 can be typed in.  A smaller board seldom has a legal move,
+ * and a 4096x4096 board already holds 16 million cells.  Other input is not changed
+ * into a size: checkSizes tells the player and the game does not start.
  */
 public class SelectPanel extends JPanel{
     // Instance Variables
-    private Integer[] rowSelect = {8,9,10,11,12};
-    private Integer[] colSelect = {8,9,10,11,12};        
+    private static final int MIN_SIZE = 5, MAX_SIZE = 4096;
+    private Integer[] rowSelect = {8,9,10,11,12,16,32,64,128,256,1024};
+    private Integer[] colSelect = {8,9,10,11,12,16,32,64,128,256,1024};
     private Integer[] symbSelect = {3,4,5,6,7,8};
     private String[] imgSelect = {"circles","animals","gems","mario","gems 2"};
     
@@ -38,6 +42,9 @@ public class SelectPanel extends JPanel{
         JLabel symbLabel = new JLabel("Number of symbols: ");
         JLabel imgLabel = new JLabel("Type of pieces: ");
         
+        rowBox.setEditable(true);
+        colBox.setEditable(true);
+        
         label.setFont(new Font("Monospaced", Font.PLAIN,18));
         rowLabel.setFont(new Font("Monospaced", Font.PLAIN, 16));
         colLabel.setFont(new Font("Monospaced", Font.PLAIN, 16));
@@ -64,19 +71,50 @@ public class SelectPanel extends JPanel{
     }
     
     /**
-     * Get method that returns the value chosen in the Rows JComboBox
-     * @return int value of Integer object selected
+     * Get method that returns the value chosen or typed in the Rows JComboBox
+     * @return int value selected, or -1 if it is not a supported board size
      */
     public int getRows(){
-        return (int) rowBox.getSelectedItem();
+        return getSize(rowBox);
     }
     
     /**
-     * Get method that returns the value chosen in the Cols JComboBox
-     * @return int value of Integer object selected
+     * Get method that returns the value chosen or typed in the Cols JComboBox
+     * @return int value selected, or -1 if it is not a supported board size
      */
     public int getCols(){
-        return (int) colBox.getSelectedItem();
+        return getSize(colBox);
+    }
+    
+    /**
+     * Checks the row and column boxes, showing a message that gives the supported
+     * range when either is not a number from MIN_SIZE to MAX_SIZE.
+     * @return true if both sizes can be used
+     */
+    public boolean checkSizes(){
+        if(getRows() < 0 || getCols() < 0){
+            JOptionPane.showMessageDialog(this, "Rows and columns must be numbers from " + MIN_SIZE
+                                          + " to " + MAX_SIZE + ".", "Board size", JOptionPane.WARNING_MESSAGE);
+            return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Reads a board size from an editable JComboBox.
+     * @param box JComboBox to read
+     * @return size between MIN_SIZE and MAX_SIZE, or -1 for text that is not a number
+     *         or a size out of that range
+     */
+    private int getSize(JComboBox<Integer> box){
+        int size;
+        
+        try{
+            size = Integer.parseInt(String.valueOf(box.getSelectedItem()).trim());
+        } catch(NumberFormatException ex){
+            return -1;
+        }
+        return size < MIN_SIZE || size > MAX_SIZE ? -1 : size;
     }
     
     /**
@@ -0,0 +1,91 @@
+import java.awt.*;
+import java.awt.image.*;
+
+/**
+ * This class pre-renders every Gem type of a theme into its own tile at the final cell
+ * size, so GameBoard paints a cell with one unscaled copy.  The sprites handed out by
+ * ImageArrays are 75 pixel images cut from the sheet, in a format that need not match
+ * the screen's, so painting them directly would scale and convert every cell on every
+ * paint; the circle theme would be a fillOval per cell.  Tiles are opaque images made
+ * compatible with the board's GraphicsConfiguration and are built again when the
+ * theme, the cell size or the configuration changes, e.g. when the board is zoomed or
+ * the window moves to another screen.
+ */
+public class TileCache{
+    // Instance Variables
+    private ImageArrays sprites;
+    private Color[] colors;
+    private int cellSize; // Cell size of the current tiles
+    private String theme; // Theme of the current tiles
+    private GraphicsConfiguration config; // Configuration the current tiles are compatible with
+    private BufferedImage[] tiles;
+    private int builds; // Number of times the tiles were built
+
+    /**
+     * Constructor for an empty cache.
+     * @param sprites loaded sprite sheets
+     * @param colors color of each type for the circles theme
+     */
+    public TileCache(ImageArrays sprites, Color[] colors){
+        this.sprites = sprites;
+        this.colors = colors;
+    }
+
+    /**
+     * Returns the tiles of a theme, building them first if the theme, size or
+     * configuration changed since the last call.
+     * @param theme "circles" or a sprite sheet name known to ImageArrays
+     * @param config configuration of the component the tiles are drawn on
+     * @param cellSize width and height of a cell in pixels
+     * @return one tile per type, indexed by type
+     */
+    public Image[] getTiles(String theme, GraphicsConfiguration config, int cellSize){
+        if(tiles == null || !theme.equals(this.theme) || !config.equals(this.config) || cellSize != this.cellSize){
+            build(theme, config, cellSize);
+        }
+        return tiles;
+    }
+
+    /**
+     * Get method for the build counter.
+     * @return number of times the tiles were built
+     */
+    public int getBuilds(){
+        return builds;
+    }
+
+    /**
+     * Renders every type of a theme into a new tile.  Circles leave a margin of 1/75 of
+     * the cell on each side, as at the original 75 pixel cells.
+     * @param theme "circles" or a sprite sheet name known to ImageArrays
+     * @param config configuration to make the tiles compatible with
+     * @param cellSize width and height of a cell in pixels
+     */
+    private void build(String theme, GraphicsConfiguration config, int cellSize){
+        BufferedImage[] images = theme.equals("circles") ? null : sprites.getArray(theme);
+        int count = images == null ? colors.length : images.length;
+        int ovalSize = Math.max(cellSize * 71 / 75, 1);
+
+        tiles = new BufferedImage[count];
+        for(int type = 0; type < count; type++){
+            BufferedImage tile = config.createCompatibleImage(cellSize, cellSize, Transparency.OPAQUE);
+            Graphics2D g = tile.createGraphics();
+
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, cellSize, cellSize);
+            if(images == null){
+                g.setColor(colors[type]);
+                g.fillOval((cellSize - ovalSize) / 2, (cellSize - ovalSize) / 2, ovalSize, ovalSize);
+            } else {
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.drawImage(images[type], 0, 0, cellSize, cellSize, null);
+            }
+            g.dispose();
+            tiles[type] = tile;
+        }
+        this.theme = theme;
+        this.config = config;
+        this.cellSize = cellSize;
+        builds++;
+    }
+}